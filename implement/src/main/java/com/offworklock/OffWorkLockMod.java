@@ -5,14 +5,20 @@ import com.offworklock.config.ConfigManager;
 import com.offworklock.dimension.DimensionLockService;
 import com.offworklock.gacha.GachaService;
 import com.offworklock.menu.PauseMenuInterceptor;
+import com.offworklock.player.ContextHandle;
 import com.offworklock.player.PlayerStateManager;
+import com.offworklock.player.ReplicationPrimary;
+import com.offworklock.player.ReplicationStandby;
+import com.offworklock.player.StateStore;
 import com.offworklock.points.PointService;
 import com.offworklock.session.AbuseTracker;
 import com.offworklock.session.SessionPolicyHandler;
 import com.offworklock.ui.GachaScreenModel;
 import com.offworklock.ui.HudOverlayModel;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.file.Path;
 import java.util.Objects;
 import java.util.UUID;
@@ -25,8 +31,23 @@ import java.util.UUID;
  * <p>
  * A platform-specific integration (Fabric/Forge/Spigot/etc) should:
  * <ul>
- *     <li>Call {@link #init(Path, Path)} once during startup.</li>
+ *     <li>Call {@link #init(Path, Path)} once during startup, or
+ *     {@link #init(Path, Path, StateStore)} to persist player state in a custom backend. With
+ *     {@code migrateLegacyOnStart} enabled, init first converts legacy text player files into the
+ *     configured backend. With {@code preloadContexts} enabled, init also loads all stored player
+ *     state so the first join does not wait on disk.</li>
+ *     <li>Call {@link #resolveContext(String)} when a world loads and pass the handle to the
+ *     services, instead of the raw context id on every event.</li>
  *     <li>Use the exposed getters to hook into events (join/quit, block break, GUI, etc.).</li>
+ *     <li>Call {@link #onServerTick()} every server tick.</li>
+ *     <li>Call {@link #backupPlayerData(Path)} to back up player state without stopping the
+ *     server.</li>
+ *     <li>Call {@link #resetOffWorkUnlocks(String)} to revoke every off-work unlock in a world at
+ *     once, or set {@code offWorkResetTime} to do so for all worlds daily.</li>
+ *     <li>With {@code replicationRole=PRIMARY}, every change is shipped to the standby process at
+ *     {@code replicationHost:replicationPort}; with {@code STANDBY}, this process listens there and
+ *     applies them. Call {@link #promoteStandby()} to fail over to the standby.</li>
+ *     <li>Call {@link #shutdown()} when the server stops so pending player state is written.</li>
  * </ul>
  * This class is intentionally free of any Minecraft API dependencies.
  */
@@ -36,6 +57,8 @@ public final class OffWorkLockMod {
 
     private final ConfigManager configManager;
     private final PlayerStateManager playerStateManager;
+    private final ReplicationPrimary replicationPrimary;
+    private volatile ReplicationStandby replicationStandby;
 
     private final DimensionLockService dimensionLockService;
     private final PointService pointService;
@@ -46,30 +69,70 @@ public final class OffWorkLockMod {
     private final SessionPolicyHandler sessionPolicyHandler;
     private final PauseMenuInterceptor pauseMenuInterceptor;
 
-    private OffWorkLockMod(Path configDirectory, Path playerDataDirectory) throws IOException {
+    private OffWorkLockMod(Path configDirectory, Path playerDataDirectory, StateStore stateStore) throws IOException {
         Objects.requireNonNull(configDirectory, "configDirectory");
         Objects.requireNonNull(playerDataDirectory, "playerDataDirectory");
 
         this.configManager = new ConfigManager(configDirectory);
-        this.playerStateManager = new PlayerStateManager(playerDataDirectory);
+        ConfigData config = configManager.getConfig();
+        this.playerStateManager = stateStore != null
+                ? new PlayerStateManager(stateStore, config)
+                : new PlayerStateManager(playerDataDirectory, config);
+        ReplicationPrimary primary = null;
+        ReplicationStandby standby = null;
+        try {
+            if (config.isMigrateLegacyOnStart()) {
+                playerStateManager.migrateLegacyContexts(config.getMigrationConcurrency());
+            }
+            if (config.isPreloadContexts()) {
+                playerStateManager.preloadContexts(config.getPreloadConcurrency());
+            }
+            // Built only when replication is on, since creating the address resolves the host.
+            if (config.getReplicationRole() == ConfigData.ReplicationRole.PRIMARY) {
+                primary = new ReplicationPrimary(playerStateManager,
+                        new InetSocketAddress(config.getReplicationHost(), config.getReplicationPort()));
+            } else if (config.getReplicationRole() == ConfigData.ReplicationRole.STANDBY) {
+                standby = new ReplicationStandby(playerStateManager,
+                        new InetSocketAddress(config.getReplicationHost(), config.getReplicationPort()));
+            }
 
-        this.dimensionLockService = new DimensionLockService(configManager);
-        this.pointService = new PointService(configManager, playerStateManager);
-        this.gachaService = new GachaService(configManager, playerStateManager);
-        this.hudOverlayModel = new HudOverlayModel(configManager, playerStateManager);
-        this.gachaScreenModel = new GachaScreenModel(configManager, playerStateManager, gachaService);
+            this.dimensionLockService = new DimensionLockService(configManager);
+            this.pointService = new PointService(configManager, playerStateManager);
+            this.gachaService = new GachaService(configManager, playerStateManager);
+            this.hudOverlayModel = new HudOverlayModel(configManager, playerStateManager);
+            this.gachaScreenModel = new GachaScreenModel(configManager, playerStateManager, gachaService);
 
-        this.abuseTracker = new AbuseTracker();
-        this.sessionPolicyHandler = new SessionPolicyHandler(
-                playerStateManager,
-                configManager::getConfig,
-                abuseTracker
-        );
+            this.abuseTracker = new AbuseTracker();
+            this.sessionPolicyHandler = new SessionPolicyHandler(
+                    playerStateManager,
+                    configManager::getConfig,
+                    abuseTracker
+            );
 
-        this.pauseMenuInterceptor = new PauseMenuInterceptor(
-                dimensionLockService,
-                configManager::getConfig
-        );
+            this.pauseMenuInterceptor = new PauseMenuInterceptor(
+                    dimensionLockService,
+                    configManager::getConfig
+            );
+        } catch (IOException | RuntimeException ex) {
+            // Nothing else holds the manager or the replication threads yet.
+            closeAfterFailure(ex, standby, playerStateManager, primary);
+            throw ex;
+        }
+        this.replicationPrimary = primary;
+        this.replicationStandby = standby;
+    }
+
+    private static void closeAfterFailure(Exception failure, Closeable... resources) {
+        for (Closeable resource : resources) {
+            if (resource == null) {
+                continue;
+            }
+            try {
+                resource.close();
+            } catch (IOException | RuntimeException ex) {
+                failure.addSuppressed(ex);
+            }
+        }
     }
 
     /**
@@ -79,10 +142,22 @@ public final class OffWorkLockMod {
      * @param playerDataDirectory directory for player state persistence
      */
     public static OffWorkLockMod init(Path configDirectory, Path playerDataDirectory) throws IOException {
+        return init(configDirectory, playerDataDirectory, null);
+    }
+
+    /**
+     * Initializes the core singleton with an explicit player state backend.
+     *
+     * @param configDirectory     directory for offwork-lock.cfg
+     * @param playerDataDirectory directory for player state persistence
+     * @param stateStore          backend for player state, or {@code null} to use the configured
+     *                            {@code storageBackend}
+     */
+    public static OffWorkLockMod init(Path configDirectory, Path playerDataDirectory, StateStore stateStore) throws IOException {
         if (INSTANCE == null) {
             synchronized (OffWorkLockMod.class) {
                 if (INSTANCE == null) {
-                    INSTANCE = new OffWorkLockMod(configDirectory, playerDataDirectory);
+                    INSTANCE = new OffWorkLockMod(configDirectory, playerDataDirectory, stateStore);
                 }
             }
         }
@@ -146,6 +221,14 @@ public final class OffWorkLockMod {
 
     // ---------- Convenience hooks (optional, platform wires these to real events) ----------
 
+    /**
+     * Should be called by the platform when a world loads; the handle replaces the
+     * context id in every call for that world.
+     */
+    public ContextHandle resolveContext(String contextId) {
+        return playerStateManager.resolveContext(contextId);
+    }
+
     /**
      * Should be called by the platform when a player joins.
      */
@@ -153,6 +236,10 @@ public final class OffWorkLockMod {
         return sessionPolicyHandler.handleSessionStart(contextId, playerId);
     }
 
+    public SessionPolicyHandler.SessionStartResult onPlayerJoin(ContextHandle context, UUID playerId) throws IOException {
+        return sessionPolicyHandler.handleSessionStart(context, playerId);
+    }
+
     /**
      * Should be called by the platform when a player exits cleanly
      * via an allowed path (e.g., unlocked quit button).
@@ -161,10 +248,75 @@ public final class OffWorkLockMod {
         sessionPolicyHandler.handleGracefulExit(contextId, playerId);
     }
 
+    public void onPlayerGracefulExit(ContextHandle context, UUID playerId) throws IOException {
+        sessionPolicyHandler.handleGracefulExit(context, playerId);
+    }
+
+    /**
+     * Should be called by the platform at the end of every server tick.
+     * Writes pending player state within the configured tick budget when
+     * {@code persistenceMode=TICK}; does nothing in other modes.
+     */
+    public void onServerTick() {
+        playerStateManager.flushOnTick();
+    }
+
     /**
      * Reloads configuration from disk.
      */
     public void reloadConfig() throws IOException {
         configManager.reload();
     }
+
+    /**
+     * Writes a consistent copy of all player state to {@code target} (a directory, or a zip
+     * archive if the name ends in {@code .zip}) while the server keeps running. See
+     * {@link PlayerStateManager#backup(Path, long)}.
+     */
+    public PlayerStateManager.BackupResult backupPlayerData(Path target) throws IOException {
+        return playerStateManager.backup(target);
+    }
+
+    /**
+     * Revokes every off-work unlock in a context in constant time. See
+     * {@link PlayerStateManager#resetOffWorkUnlocks(String)}.
+     */
+    public void resetOffWorkUnlocks(String contextId) throws IOException {
+        playerStateManager.resetOffWorkUnlocks(contextId);
+    }
+
+    /**
+     * Makes a standby the serving node on failover: stops applying the primary's changes, after
+     * which players are served from the replicated state without a cold load.
+     *
+     * @return {@code false} if this process is not a standby, or was already promoted
+     */
+    public boolean promoteStandby() throws IOException {
+        ReplicationStandby standby = replicationStandby;
+        if (standby == null) {
+            return false;
+        }
+        replicationStandby = null;
+        standby.promote();
+        return true;
+    }
+
+    /**
+     * Should be called by the platform when the server stops.
+     * Flushes pending player state and stops background persistence threads.
+     */
+    public void shutdown() throws IOException {
+        ReplicationStandby standby = replicationStandby;
+        if (standby != null) {
+            standby.close();
+        }
+        try {
+            playerStateManager.close();
+        } finally {
+            // After the manager, so that its final flush still reaches the standby.
+            if (replicationPrimary != null) {
+                replicationPrimary.close();
+            }
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package com.offworklock.config;
 
+import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -28,6 +29,31 @@ public final class ConfigData {
     private final boolean forcedExitTrackingEnabled;
     private final int forcedExitWarningThreshold;
     private final String forcedExitWarningMessage;
+    private final PersistenceMode persistenceMode;
+    private final int flushIntervalSeconds;
+    private final StorageBackend storageBackend;
+    private final int journalCompactionThreshold;
+    private final int maxLoadedContexts;
+    private final int groupCommitWindowMillis;
+    private final boolean preloadContexts;
+    private final int preloadConcurrency;
+    private final int tickFlushBudgetMillis;
+    private final int tickFlushMaxBackoffTicks;
+    private final boolean sharedStorage;
+    private final int sharedStorageCheckMillis;
+    private final int contextBucketCount;
+    private final Durability pointAwardDurability;
+    private final Durability gachaRollDurability;
+    private final Durability sessionDurability;
+    private final int retentionDays;
+    private final int retentionCheckMinutes;
+    private final boolean migrateLegacyOnStart;
+    private final int migrationConcurrency;
+    private final int backupMaxKilobytesPerSecond;
+    private final ReplicationRole replicationRole;
+    private final String replicationHost;
+    private final int replicationPort;
+    private final LocalTime offWorkResetTime;
 
     private ConfigData(Builder builder) {
         this.lockedDimensions = Collections.unmodifiableList(new ArrayList<>(builder.lockedDimensions));
@@ -46,6 +72,31 @@ public final class ConfigData {
         this.forcedExitTrackingEnabled = builder.forcedExitTrackingEnabled;
         this.forcedExitWarningThreshold = builder.forcedExitWarningThreshold;
         this.forcedExitWarningMessage = builder.forcedExitWarningMessage;
+        this.persistenceMode = builder.persistenceMode;
+        this.flushIntervalSeconds = builder.flushIntervalSeconds;
+        this.storageBackend = builder.storageBackend;
+        this.journalCompactionThreshold = builder.journalCompactionThreshold;
+        this.maxLoadedContexts = builder.maxLoadedContexts;
+        this.groupCommitWindowMillis = builder.groupCommitWindowMillis;
+        this.preloadContexts = builder.preloadContexts;
+        this.preloadConcurrency = builder.preloadConcurrency;
+        this.tickFlushBudgetMillis = builder.tickFlushBudgetMillis;
+        this.tickFlushMaxBackoffTicks = builder.tickFlushMaxBackoffTicks;
+        this.sharedStorage = builder.sharedStorage;
+        this.sharedStorageCheckMillis = builder.sharedStorageCheckMillis;
+        this.contextBucketCount = builder.contextBucketCount;
+        this.pointAwardDurability = builder.pointAwardDurability;
+        this.gachaRollDurability = builder.gachaRollDurability;
+        this.sessionDurability = builder.sessionDurability;
+        this.retentionDays = builder.retentionDays;
+        this.retentionCheckMinutes = builder.retentionCheckMinutes;
+        this.migrateLegacyOnStart = builder.migrateLegacyOnStart;
+        this.migrationConcurrency = builder.migrationConcurrency;
+        this.backupMaxKilobytesPerSecond = builder.backupMaxKilobytesPerSecond;
+        this.replicationRole = builder.replicationRole;
+        this.replicationHost = builder.replicationHost;
+        this.replicationPort = builder.replicationPort;
+        this.offWorkResetTime = builder.offWorkResetTime;
     }
 
     public List<String> getLockedDimensions() {
@@ -112,6 +163,109 @@ public final class ConfigData {
         return forcedExitWarningMessage;
     }
 
+    public PersistenceMode getPersistenceMode() {
+        return persistenceMode;
+    }
+
+    public int getFlushIntervalSeconds() {
+        return flushIntervalSeconds;
+    }
+
+    public StorageBackend getStorageBackend() {
+        return storageBackend;
+    }
+
+    public int getJournalCompactionThreshold() {
+        return journalCompactionThreshold;
+    }
+
+    public int getMaxLoadedContexts() {
+        return maxLoadedContexts;
+    }
+
+    public int getGroupCommitWindowMillis() {
+        return groupCommitWindowMillis;
+    }
+
+    public boolean isPreloadContexts() {
+        return preloadContexts;
+    }
+
+    public int getPreloadConcurrency() {
+        return preloadConcurrency;
+    }
+
+    public int getTickFlushBudgetMillis() {
+        return tickFlushBudgetMillis;
+    }
+
+    public int getTickFlushMaxBackoffTicks() {
+        return tickFlushMaxBackoffTicks;
+    }
+
+    public boolean isSharedStorage() {
+        return sharedStorage;
+    }
+
+    public int getSharedStorageCheckMillis() {
+        return sharedStorageCheckMillis;
+    }
+
+    public int getContextBucketCount() {
+        return contextBucketCount;
+    }
+
+    public Durability getPointAwardDurability() {
+        return pointAwardDurability;
+    }
+
+    public Durability getGachaRollDurability() {
+        return gachaRollDurability;
+    }
+
+    public Durability getSessionDurability() {
+        return sessionDurability;
+    }
+
+    public int getRetentionDays() {
+        return retentionDays;
+    }
+
+    public int getRetentionCheckMinutes() {
+        return retentionCheckMinutes;
+    }
+
+    public boolean isMigrateLegacyOnStart() {
+        return migrateLegacyOnStart;
+    }
+
+    public int getMigrationConcurrency() {
+        return migrationConcurrency;
+    }
+
+    public int getBackupMaxKilobytesPerSecond() {
+        return backupMaxKilobytesPerSecond;
+    }
+
+    public ReplicationRole getReplicationRole() {
+        return replicationRole;
+    }
+
+    public String getReplicationHost() {
+        return replicationHost;
+    }
+
+    public int getReplicationPort() {
+        return replicationPort;
+    }
+
+    /**
+     * Local time of day at which all off-work unlocks are revoked, or {@code null} if they never are.
+     */
+    public LocalTime getOffWorkResetTime() {
+        return offWorkResetTime;
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -130,6 +284,64 @@ public final class ConfigData {
         PERMANENT_UNLOCK
     }
 
+    /**
+     * Controls when player state changes are written to disk.
+     */
+    public enum PersistenceMode {
+        /** Every change rewrites the context file before the update call returns. */
+        IMMEDIATE,
+        /** Changes are kept in memory, marked dirty and flushed periodically and on shutdown. */
+        WRITE_BEHIND,
+        /** Updates wait for a shared flush plus fsync that covers every update in a short window. */
+        GROUP_COMMIT,
+        /** Changes are kept in memory and flushed from the server tick within a per-tick time budget. */
+        TICK
+    }
+
+    /**
+     * How durable a single state change must be when its update call returns.
+     */
+    public enum Durability {
+        /** Whatever {@link PersistenceMode} does for every update. */
+        DEFAULT,
+        /** Only kept in memory; written by the next background or tick flush. */
+        ASYNC,
+        /** Written and fsynced before returning, sharing the fsync with concurrent updates. */
+        GROUP_COMMIT,
+        /** Written and fsynced before returning, without waiting for other updates. */
+        SYNC
+    }
+
+    /**
+     * On-disk layout used for player state.
+     */
+    public enum StorageBackend {
+        /** One text snapshot per context, rewritten on every flush. */
+        TEXT,
+        /** Text snapshot plus an append-only journal that is compacted in the background. */
+        JOURNAL,
+        /** Memory-mapped fixed-width binary records patched in place. */
+        MAPPED,
+        /** Deflate-compressed binary snapshot per context, rewritten on every flush. */
+        COMPACT,
+        /** Text files per UUID-hash bucket of a context; a flush rewrites only changed buckets. */
+        BUCKETED,
+        /** Nothing is written to disk; for tests and benchmarks. */
+        MEMORY
+    }
+
+    /**
+     * Part this process plays in player state replication.
+     */
+    public enum ReplicationRole {
+        /** No replication. */
+        NONE,
+        /** Ships every change written to disk to a standby process. */
+        PRIMARY,
+        /** Applies the changes shipped by a primary, ready to take over from it. */
+        STANDBY
+    }
+
     public static final class Builder {
         private List<String> lockedDimensions = new ArrayList<>();
         private Map<String, Integer> oreValues = new LinkedHashMap<>();
@@ -147,6 +359,31 @@ public final class ConfigData {
         private boolean forcedExitTrackingEnabled = true;
         private int forcedExitWarningThreshold = 3;
         private String forcedExitWarningMessage = "강제 종료 시도가 {count}회 감지되었습니다.";
+        private PersistenceMode persistenceMode = PersistenceMode.IMMEDIATE;
+        private int flushIntervalSeconds = 5;
+        private StorageBackend storageBackend = StorageBackend.TEXT;
+        private int journalCompactionThreshold = 1000;
+        private int maxLoadedContexts = 64;
+        private int groupCommitWindowMillis = 10;
+        private boolean preloadContexts = false;
+        private int preloadConcurrency = 4;
+        private int tickFlushBudgetMillis = 2;
+        private int tickFlushMaxBackoffTicks = 20;
+        private boolean sharedStorage = false;
+        private int sharedStorageCheckMillis = 1000;
+        private int contextBucketCount = 16;
+        private Durability pointAwardDurability = Durability.DEFAULT;
+        private Durability gachaRollDurability = Durability.DEFAULT;
+        private Durability sessionDurability = Durability.DEFAULT;
+        private int retentionDays = 0;
+        private int retentionCheckMinutes = 60;
+        private boolean migrateLegacyOnStart = true;
+        private int migrationConcurrency = 4;
+        private int backupMaxKilobytesPerSecond = 8192;
+        private ReplicationRole replicationRole = ReplicationRole.NONE;
+        private String replicationHost = "127.0.0.1";
+        private int replicationPort = 25600;
+        private LocalTime offWorkResetTime;
 
         private Builder() {
         }
@@ -168,6 +405,31 @@ public final class ConfigData {
             this.forcedExitTrackingEnabled = source.forcedExitTrackingEnabled;
             this.forcedExitWarningThreshold = source.forcedExitWarningThreshold;
             this.forcedExitWarningMessage = source.forcedExitWarningMessage;
+            this.persistenceMode = source.persistenceMode;
+            this.flushIntervalSeconds = source.flushIntervalSeconds;
+            this.storageBackend = source.storageBackend;
+            this.journalCompactionThreshold = source.journalCompactionThreshold;
+            this.maxLoadedContexts = source.maxLoadedContexts;
+            this.groupCommitWindowMillis = source.groupCommitWindowMillis;
+            this.preloadContexts = source.preloadContexts;
+            this.preloadConcurrency = source.preloadConcurrency;
+            this.tickFlushBudgetMillis = source.tickFlushBudgetMillis;
+            this.tickFlushMaxBackoffTicks = source.tickFlushMaxBackoffTicks;
+            this.sharedStorage = source.sharedStorage;
+            this.sharedStorageCheckMillis = source.sharedStorageCheckMillis;
+            this.contextBucketCount = source.contextBucketCount;
+            this.pointAwardDurability = source.pointAwardDurability;
+            this.gachaRollDurability = source.gachaRollDurability;
+            this.sessionDurability = source.sessionDurability;
+            this.retentionDays = source.retentionDays;
+            this.retentionCheckMinutes = source.retentionCheckMinutes;
+            this.migrateLegacyOnStart = source.migrateLegacyOnStart;
+            this.migrationConcurrency = source.migrationConcurrency;
+            this.backupMaxKilobytesPerSecond = source.backupMaxKilobytesPerSecond;
+            this.replicationRole = source.replicationRole;
+            this.replicationHost = source.replicationHost;
+            this.replicationPort = source.replicationPort;
+            this.offWorkResetTime = source.offWorkResetTime;
         }
 
         public Builder lockedDimensions(List<String> lockedDimensions) {
@@ -265,6 +527,131 @@ public final class ConfigData {
             return this;
         }
 
+        public Builder persistenceMode(PersistenceMode mode) {
+            this.persistenceMode = Objects.requireNonNull(mode, "persistenceMode");
+            return this;
+        }
+
+        public Builder flushIntervalSeconds(int flushIntervalSeconds) {
+            this.flushIntervalSeconds = Math.max(1, flushIntervalSeconds);
+            return this;
+        }
+
+        public Builder storageBackend(StorageBackend storageBackend) {
+            this.storageBackend = Objects.requireNonNull(storageBackend, "storageBackend");
+            return this;
+        }
+
+        public Builder journalCompactionThreshold(int journalCompactionThreshold) {
+            this.journalCompactionThreshold = Math.max(1, journalCompactionThreshold);
+            return this;
+        }
+
+        public Builder maxLoadedContexts(int maxLoadedContexts) {
+            this.maxLoadedContexts = Math.max(0, maxLoadedContexts);
+            return this;
+        }
+
+        public Builder groupCommitWindowMillis(int groupCommitWindowMillis) {
+            this.groupCommitWindowMillis = Math.max(0, groupCommitWindowMillis);
+            return this;
+        }
+
+        public Builder preloadContexts(boolean preloadContexts) {
+            this.preloadContexts = preloadContexts;
+            return this;
+        }
+
+        public Builder preloadConcurrency(int preloadConcurrency) {
+            this.preloadConcurrency = Math.max(1, preloadConcurrency);
+            return this;
+        }
+
+        public Builder tickFlushBudgetMillis(int tickFlushBudgetMillis) {
+            this.tickFlushBudgetMillis = Math.max(1, tickFlushBudgetMillis);
+            return this;
+        }
+
+        public Builder tickFlushMaxBackoffTicks(int tickFlushMaxBackoffTicks) {
+            this.tickFlushMaxBackoffTicks = Math.max(0, tickFlushMaxBackoffTicks);
+            return this;
+        }
+
+        public Builder sharedStorage(boolean sharedStorage) {
+            this.sharedStorage = sharedStorage;
+            return this;
+        }
+
+        public Builder sharedStorageCheckMillis(int sharedStorageCheckMillis) {
+            this.sharedStorageCheckMillis = Math.max(0, sharedStorageCheckMillis);
+            return this;
+        }
+
+        public Builder contextBucketCount(int contextBucketCount) {
+            this.contextBucketCount = Math.max(1, contextBucketCount);
+            return this;
+        }
+
+        public Builder pointAwardDurability(Durability pointAwardDurability) {
+            this.pointAwardDurability = Objects.requireNonNull(pointAwardDurability, "pointAwardDurability");
+            return this;
+        }
+
+        public Builder gachaRollDurability(Durability gachaRollDurability) {
+            this.gachaRollDurability = Objects.requireNonNull(gachaRollDurability, "gachaRollDurability");
+            return this;
+        }
+
+        public Builder sessionDurability(Durability sessionDurability) {
+            this.sessionDurability = Objects.requireNonNull(sessionDurability, "sessionDurability");
+            return this;
+        }
+
+        public Builder retentionDays(int retentionDays) {
+            this.retentionDays = Math.max(0, retentionDays);
+            return this;
+        }
+
+        public Builder retentionCheckMinutes(int retentionCheckMinutes) {
+            this.retentionCheckMinutes = Math.max(1, retentionCheckMinutes);
+            return this;
+        }
+
+        public Builder migrateLegacyOnStart(boolean migrateLegacyOnStart) {
+            this.migrateLegacyOnStart = migrateLegacyOnStart;
+            return this;
+        }
+
+        public Builder migrationConcurrency(int migrationConcurrency) {
+            this.migrationConcurrency = Math.max(1, migrationConcurrency);
+            return this;
+        }
+
+        public Builder backupMaxKilobytesPerSecond(int backupMaxKilobytesPerSecond) {
+            this.backupMaxKilobytesPerSecond = Math.max(0, backupMaxKilobytesPerSecond);
+            return this;
+        }
+
+        public Builder replicationRole(ReplicationRole replicationRole) {
+            this.replicationRole = Objects.requireNonNull(replicationRole, "replicationRole");
+            return this;
+        }
+
+        public Builder replicationHost(String replicationHost) {
+            this.replicationHost = Objects.requireNonNull(replicationHost, "replicationHost");
+            return this;
+        }
+
+        public Builder replicationPort(int replicationPort) {
+            this.replicationPort = Math.max(1, Math.min(65535, replicationPort));
+            return this;
+        }
+
+        public Builder offWorkResetTime(LocalTime offWorkResetTime) {
+            this.offWorkResetTime = offWorkResetTime;
+            return this;
+        }
+
         public ConfigData build() {
             return new ConfigData(this);
         }
@@ -141,6 +141,59 @@ public final class ConfigManager {
                 "강제 종료 시도가 {count}회 감지되었습니다."
         ));
 
+        builder.persistenceMode(StringParsers.parseEnum(
+                ConfigData.PersistenceMode.class,
+                rawValues.get("persistenceMode"),
+                ConfigData.PersistenceMode.IMMEDIATE
+        ));
+        builder.flushIntervalSeconds(StringParsers.parseInt(rawValues.get("flushIntervalSeconds"), 5));
+        builder.storageBackend(StringParsers.parseEnum(
+                ConfigData.StorageBackend.class,
+                rawValues.get("storageBackend"),
+                ConfigData.StorageBackend.TEXT
+        ));
+        builder.journalCompactionThreshold(StringParsers.parseInt(
+                rawValues.get("journalCompactionThreshold"),
+                1000
+        ));
+        builder.maxLoadedContexts(StringParsers.parseInt(rawValues.get("maxLoadedContexts"), 64));
+        builder.groupCommitWindowMillis(StringParsers.parseInt(rawValues.get("groupCommitWindowMillis"), 10));
+        builder.preloadContexts(StringParsers.parseBoolean(rawValues.get("preloadContexts"), false));
+        builder.preloadConcurrency(StringParsers.parseInt(rawValues.get("preloadConcurrency"), 4));
+        builder.tickFlushBudgetMillis(StringParsers.parseInt(rawValues.get("tickFlushBudgetMillis"), 2));
+        builder.tickFlushMaxBackoffTicks(StringParsers.parseInt(rawValues.get("tickFlushMaxBackoffTicks"), 20));
+        builder.sharedStorage(StringParsers.parseBoolean(rawValues.get("sharedStorage"), false));
+        builder.sharedStorageCheckMillis(StringParsers.parseInt(rawValues.get("sharedStorageCheckMillis"), 1000));
+        builder.contextBucketCount(StringParsers.parseInt(rawValues.get("contextBucketCount"), 16));
+        builder.pointAwardDurability(StringParsers.parseEnum(
+                ConfigData.Durability.class,
+                rawValues.get("pointAwardDurability"),
+                ConfigData.Durability.DEFAULT
+        ));
+        builder.gachaRollDurability(StringParsers.parseEnum(
+                ConfigData.Durability.class,
+                rawValues.get("gachaRollDurability"),
+                ConfigData.Durability.DEFAULT
+        ));
+        builder.sessionDurability(StringParsers.parseEnum(
+                ConfigData.Durability.class,
+                rawValues.get("sessionDurability"),
+                ConfigData.Durability.DEFAULT
+        ));
+        builder.retentionDays(StringParsers.parseInt(rawValues.get("retentionDays"), 0));
+        builder.retentionCheckMinutes(StringParsers.parseInt(rawValues.get("retentionCheckMinutes"), 60));
+        builder.migrateLegacyOnStart(StringParsers.parseBoolean(rawValues.get("migrateLegacyOnStart"), true));
+        builder.migrationConcurrency(StringParsers.parseInt(rawValues.get("migrationConcurrency"), 4));
+        builder.backupMaxKilobytesPerSecond(StringParsers.parseInt(rawValues.get("backupMaxKilobytesPerSecond"), 8192));
+        builder.replicationRole(StringParsers.parseEnum(
+                ConfigData.ReplicationRole.class,
+                rawValues.get("replicationRole"),
+                ConfigData.ReplicationRole.NONE
+        ));
+        builder.replicationHost(rawValues.getOrDefault("replicationHost", "127.0.0.1"));
+        builder.replicationPort(StringParsers.parseInt(rawValues.get("replicationPort"), 25600));
+        builder.offWorkResetTime(StringParsers.parseTime(rawValues.get("offWorkResetTime"), null));
+
         return builder.build();
     }
 
@@ -178,6 +231,62 @@ public final class ConfigManager {
         lines.add("forcedExitWarningThreshold=" + config.getForcedExitWarningThreshold());
         lines.add("# forcedExitWarningMessage: message template for forced exit warnings ({count} placeholder)");
         lines.add("forcedExitWarningMessage=" + config.getForcedExitWarningMessage());
+        lines.add("# persistenceMode: IMMEDIATE (write on every change), WRITE_BEHIND (flush dirty contexts periodically),"
+                + " GROUP_COMMIT (durable writes with one fsync shared by concurrent changes)"
+                + " or TICK (flush dirty contexts from the server tick within tickFlushBudgetMillis)");
+        lines.add("persistenceMode=" + config.getPersistenceMode());
+        lines.add("# flushIntervalSeconds: seconds between background flushes in WRITE_BEHIND mode;"
+                + " in IMMEDIATE and GROUP_COMMIT mode they write changes made with ASYNC durability");
+        lines.add("flushIntervalSeconds=" + config.getFlushIntervalSeconds());
+        lines.add("# storageBackend: TEXT (one file per context), JOURNAL (snapshot plus append-only change log),"
+                + " MAPPED (memory-mapped binary records), COMPACT (compressed binary snapshot),"
+                + " BUCKETED (text files per UUID-hash bucket, only changed buckets are rewritten)"
+                + " or MEMORY (not persisted, for testing)");
+        lines.add("storageBackend=" + config.getStorageBackend());
+        lines.add("# journalCompactionThreshold: journal records per context before it is compacted into the snapshot");
+        lines.add("journalCompactionThreshold=" + config.getJournalCompactionThreshold());
+        lines.add("# maxLoadedContexts: contexts kept in memory before the least recently used one is flushed and unloaded (0 = unlimited)");
+        lines.add("maxLoadedContexts=" + config.getMaxLoadedContexts());
+        lines.add("# groupCommitWindowMillis: how long GROUP_COMMIT collects changes before one shared fsync");
+        lines.add("groupCommitWindowMillis=" + config.getGroupCommitWindowMillis());
+        lines.add("# preloadContexts: load all stored contexts in parallel at startup instead of on first access");
+        lines.add("preloadContexts=" + config.isPreloadContexts());
+        lines.add("# preloadConcurrency: maximum number of contexts read at the same time during preloading");
+        lines.add("preloadConcurrency=" + config.getPreloadConcurrency());
+        lines.add("# tickFlushBudgetMillis: time per server tick that TICK mode may spend writing dirty contexts");
+        lines.add("tickFlushBudgetMillis=" + config.getTickFlushBudgetMillis());
+        lines.add("# tickFlushMaxBackoffTicks: most ticks TICK mode pauses flushing while writes pile up faster than the budget allows");
+        lines.add("tickFlushMaxBackoffTicks=" + config.getTickFlushMaxBackoffTicks());
+        lines.add("# sharedStorage: coordinate with other server processes using the same player data directory (TEXT, COMPACT or BUCKETED backend only; updates are then written before they return)");
+        lines.add("sharedStorage=" + config.isSharedStorage());
+        lines.add("# sharedStorageCheckMillis: how often reads check a shared context for changes by other processes (updates always check)");
+        lines.add("sharedStorageCheckMillis=" + config.getSharedStorageCheckMillis());
+        lines.add("# contextBucketCount: files each context is split into by the BUCKETED backend; changing it rewrites contexts on their next flush");
+        lines.add("contextBucketCount=" + config.getContextBucketCount());
+        lines.add("# pointAwardDurability: durability of points from mined ores and exchanges: DEFAULT (as persistenceMode), ASYNC (next background or tick flush), GROUP_COMMIT (shared fsync before returning) or SYNC (own fsync before returning)");
+        lines.add("pointAwardDurability=" + config.getPointAwardDurability());
+        lines.add("# gachaRollDurability: durability of gacha rolls, same values as pointAwardDurability");
+        lines.add("gachaRollDurability=" + config.getGachaRollDurability());
+        lines.add("# sessionDurability: durability of session open/exit changes, same values as pointAwardDurability");
+        lines.add("sessionDurability=" + config.getSessionDurability());
+        lines.add("# retentionDays: players not seen for this many days are moved to a cold archive, or dropped if they hold nothing; 0 keeps everyone loaded");
+        lines.add("retentionDays=" + config.getRetentionDays());
+        lines.add("# retentionCheckMinutes: how often the background job looks for inactive players when retentionDays is set");
+        lines.add("retentionCheckMinutes=" + config.getRetentionCheckMinutes());
+        lines.add("# migrateLegacyOnStart: convert contexts still stored as legacy .dat text files into the configured backend at startup");
+        lines.add("migrateLegacyOnStart=" + config.isMigrateLegacyOnStart());
+        lines.add("# migrationConcurrency: how many legacy files the startup migration converts at once");
+        lines.add("migrationConcurrency=" + config.getMigrationConcurrency());
+        lines.add("# backupMaxKilobytesPerSecond: write rate limit of online backups, so they do not compete with gameplay writes; 0 for none");
+        lines.add("backupMaxKilobytesPerSecond=" + config.getBackupMaxKilobytesPerSecond());
+        lines.add("# replicationRole: NONE, PRIMARY (ship every written change to the standby at replicationHost:replicationPort) or STANDBY (listen there and apply the primary's changes)");
+        lines.add("replicationRole=" + config.getReplicationRole());
+        lines.add("# replicationHost: address the standby listens on and the primary connects to");
+        lines.add("replicationHost=" + config.getReplicationHost());
+        lines.add("# replicationPort: TCP port of the standby");
+        lines.add("replicationPort=" + config.getReplicationPort());
+        lines.add("# offWorkResetTime: local time of day (HH:mm) at which every off-work unlock in every context is revoked, e.g. 09:00 for the start of the work day; empty disables");
+        lines.add("offWorkResetTime=" + (config.getOffWorkResetTime() == null ? "" : config.getOffWorkResetTime()));
         return lines;
     }
 
@@ -386,6 +495,32 @@ public final class ConfigManager {
         builder.forcedExitWarningThreshold(3);
         builder.forcedExitWarningMessage("강제 종료 시도가 {count}회 감지되었습니다.");
 
+        builder.persistenceMode(ConfigData.PersistenceMode.IMMEDIATE);
+        builder.flushIntervalSeconds(5);
+        builder.storageBackend(ConfigData.StorageBackend.TEXT);
+        builder.journalCompactionThreshold(1000);
+        builder.maxLoadedContexts(64);
+        builder.groupCommitWindowMillis(10);
+        builder.preloadContexts(false);
+        builder.preloadConcurrency(4);
+        builder.tickFlushBudgetMillis(2);
+        builder.tickFlushMaxBackoffTicks(20);
+        builder.sharedStorage(false);
+        builder.sharedStorageCheckMillis(1000);
+        builder.contextBucketCount(16);
+        builder.pointAwardDurability(ConfigData.Durability.DEFAULT);
+        builder.gachaRollDurability(ConfigData.Durability.DEFAULT);
+        builder.sessionDurability(ConfigData.Durability.DEFAULT);
+        builder.retentionDays(0);
+        builder.retentionCheckMinutes(60);
+        builder.migrateLegacyOnStart(true);
+        builder.migrationConcurrency(4);
+        builder.backupMaxKilobytesPerSecond(8192);
+        builder.replicationRole(ConfigData.ReplicationRole.NONE);
+        builder.replicationHost("127.0.0.1");
+        builder.replicationPort(25600);
+        builder.offWorkResetTime(null);
+
         return builder.build();
     }
 }
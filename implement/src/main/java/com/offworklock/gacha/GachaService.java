@@ -3,6 +3,8 @@ package com.offworklock.gacha;
 import com.offworklock.config.ConfigData;
 import com.offworklock.config.ConfigManager;
 import com.offworklock.config.GachaReward;
+import com.offworklock.player.ContextHandle;
+import com.offworklock.player.PackedPlayerState;
 import com.offworklock.player.PlayerState;
 import com.offworklock.player.PlayerStateManager;
 import com.offworklock.util.StringParsers;
@@ -42,10 +44,18 @@ public final class GachaService {
      */
     public boolean canRoll(String contextId, UUID playerId) throws IOException {
         Objects.requireNonNull(contextId, "contextId");
+        return canRoll(playerStateManager.resolveContext(contextId), playerId);
+    }
+
+    /**
+     * Same as {@link #canRoll(String, UUID)} for an already resolved context.
+     */
+    public boolean canRoll(ContextHandle context, UUID playerId) throws IOException {
+        Objects.requireNonNull(context, "context");
         Objects.requireNonNull(playerId, "playerId");
 
         ConfigData config = configManager.getConfig();
-        PlayerState state = playerStateManager.getOrCreateState(contextId, playerId);
+        PlayerState state = playerStateManager.getOrCreateState(context, playerId);
         return state.getPoints() >= config.getGachaCost();
     }
 
@@ -58,6 +68,14 @@ public final class GachaService {
      */
     public RollResult roll(String contextId, UUID playerId) throws IOException {
         Objects.requireNonNull(contextId, "contextId");
+        return roll(playerStateManager.resolveContext(contextId), playerId);
+    }
+
+    /**
+     * Same as {@link #roll(String, UUID)} for an already resolved context.
+     */
+    public RollResult roll(ContextHandle context, UUID playerId) throws IOException {
+        Objects.requireNonNull(context, "context");
         Objects.requireNonNull(playerId, "playerId");
 
         ConfigData config = configManager.getConfig();
@@ -66,22 +84,37 @@ public final class GachaService {
             return RollResult.failure("보상 테이블이 비어 있습니다.");
         }
 
-        PlayerState originalState = playerStateManager.getOrCreateState(contextId, playerId);
         int cost = config.getGachaCost();
-        if (originalState.getPoints() < cost) {
-            return RollResult.failure("포인트가 부족합니다.");
+        RollResult[] result = new RollResult[1];
+        // Cost check, deduction and effects run as one atomic update, so a concurrent point award
+        // can neither be lost nor make the roll spend points the player no longer has.
+        playerStateManager.updatePacked(context, playerId, state -> applyRoll(rewards, cost, state, result),
+                config.getGachaRollDurability());
+        return result[0];
+    }
+
+    /**
+     * Applies one roll to the packed {@code originalState}, storing the outcome in {@code result[0]}.
+     * Returns the packed state to persist (unchanged on failure).
+     */
+    private long applyRoll(List<GachaReward> rewards, int cost, long originalState, RollResult[] result) {
+        int originalPoints = PackedPlayerState.points(originalState);
+        if (originalPoints < cost) {
+            result[0] = RollResult.failure("포인트가 부족합니다.");
+            return originalState;
         }
 
         GachaReward reward = weightedPicker.pick(rewards, GachaReward::getWeight);
         if (reward == null) {
-            return RollResult.failure("유효한 보상을 선택할 수 없습니다.");
+            result[0] = RollResult.failure("유효한 보상을 선택할 수 없습니다.");
+            return originalState;
         }
 
         // Deduct cost first (never below 0)
-        int pointsAfterCost = Math.max(0, originalState.getPoints() - cost);
-        PlayerState workingState = originalState.withPoints(pointsAfterCost);
+        int pointsAfterCost = Math.max(0, originalPoints - cost);
+        long workingState = PackedPlayerState.withPoints(originalState, pointsAfterCost);
 
-        boolean unlockedExit = workingState.canOffWork();
+        boolean unlockedExit = PackedPlayerState.canOffWork(workingState);
         int bonusPoints = 0;
 
         List<GachaEffect> deferredEffects = new ArrayList<>();
@@ -100,9 +133,7 @@ public final class GachaService {
 
                 switch (effect.getType()) {
                     case UNLOCK_EXIT -> {
-                        if (!workingState.canOffWork()) {
-                            workingState = workingState.withOffWork(true);
-                        }
+                        workingState = PackedPlayerState.withOffWork(workingState, true);
                         unlockedExit = true;
                         notifications.add("퇴근 성공! ESC 메뉴가 다시 활성화됩니다.");
                     }
@@ -112,10 +143,10 @@ public final class GachaService {
                                 ? 0
                                 : StringParsers.parseInt(effect.getArguments().get(0), 0);
                         if (delta != 0) {
-                            int before = workingState.getPoints();
+                            int before = PackedPlayerState.points(workingState);
                             long updated = (long) before + delta;
                             int clamped = (int) Math.max(0L, Math.min(Integer.MAX_VALUE, updated));
-                            workingState = workingState.withPoints(clamped);
+                            workingState = PackedPlayerState.withPoints(workingState, clamped);
                             int applied = clamped - before;
                             if (applied != 0) {
                                 bonusPoints += applied;
@@ -141,25 +172,23 @@ public final class GachaService {
             }
         }
 
-        // Persist updated state
-        playerStateManager.updateState(contextId, playerId, workingState);
-
         // Always show reward name first if available
         if (reward.getName() != null && !reward.getName().isBlank()) {
             notifications.add(0, reward.getName());
         }
 
-        return RollResult.success(
+        result[0] = RollResult.success(
                 reward,
                 cost,
-                originalState.getPoints(),
-                workingState.getPoints(),
+                originalPoints,
+                PackedPlayerState.points(workingState),
                 bonusPoints,
                 unlockedExit,
                 deferredEffects,
                 notifications,
                 executedEffects
         );
+        return workingState;
     }
 
     /**
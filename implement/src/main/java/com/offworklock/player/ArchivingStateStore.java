@@ -0,0 +1,170 @@
+package com.offworklock.player;
+
+import com.offworklock.util.AtomicFiles;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Adds a cold archive to another store for players retired by retention. Archived players live in
+ * {@code .archive/<context>/bucket-<n>.dat} text files, split by UUID hash so that restoring one
+ * player reads a single small file; the context itself never loads them. Everything else is
+ * passed through to the wrapped store.
+ */
+public final class ArchivingStateStore implements StateStore {
+
+    private static final int BUCKET_COUNT = 64;
+    private static final String ARCHIVE_DIRECTORY = ".archive";
+
+    private final StateStore delegate;
+    private final Path archiveDirectory;
+
+    public ArchivingStateStore(StateStore delegate, Path storageDirectory) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.archiveDirectory = Objects.requireNonNull(storageDirectory, "storageDirectory").resolve(ARCHIVE_DIRECTORY);
+    }
+
+    @Override
+    public Map<UUID, PlayerState> load(String contextId) throws IOException {
+        return delegate.load(contextId);
+    }
+
+    @Override
+    public void write(String contextId, Map<UUID, PlayerState> records, Set<UUID> changed, boolean force) throws IOException {
+        delegate.write(contextId, records, changed, force);
+    }
+
+    @Override
+    public boolean requiresFullContext() {
+        return delegate.requiresFullContext();
+    }
+
+    @Override
+    public boolean supportsSharing() {
+        return delegate.supportsSharing();
+    }
+
+    @Override
+    public boolean isModifiedExternally(String contextId) throws IOException {
+        return delegate.isModifiedExternally(contextId);
+    }
+
+    @Override
+    public void release(String contextId) throws IOException {
+        delegate.release(contextId);
+    }
+
+    @Override
+    public boolean importLegacy(String contextId) throws IOException {
+        return delegate.importLegacy(contextId);
+    }
+
+    @Override
+    public boolean supportsArchive() {
+        return true;
+    }
+
+    /**
+     * Rewrites every bucket holding a changed player, always with fsync: the caller drops the
+     * players from the context right afterwards.
+     */
+    @Override
+    public void archive(String contextId, Map<UUID, PlayerState> changes) throws IOException {
+        Map<Integer, Map<UUID, PlayerState>> byBucket = new HashMap<>();
+        for (Map.Entry<UUID, PlayerState> entry : changes.entrySet()) {
+            byBucket.computeIfAbsent(bucketOf(entry.getKey()), ignored -> new LinkedHashMap<>())
+                    .put(entry.getKey(), entry.getValue());
+        }
+        Path directory = archiveDirectory.resolve(contextId);
+        if (!Files.isDirectory(directory)) {
+            Files.createDirectories(directory);
+            AtomicFiles.forceDirectory(archiveDirectory);
+        }
+        for (Map.Entry<Integer, Map<UUID, PlayerState>> bucket : byBucket.entrySet()) {
+            Path file = bucketFile(contextId, bucket.getKey());
+            Map<UUID, PlayerState> archived = new LinkedHashMap<>();
+            PlayerStateCodec.readInto(file, archived);
+            PlayerStateCodec.applyChanges(bucket.getValue(), archived);
+            if (archived.isEmpty()) {
+                if (Files.deleteIfExists(file)) {
+                    AtomicFiles.forceDirectory(directory);
+                }
+            } else {
+                AtomicFiles.writeString(file, PlayerStateCodec.format(contextId, archived), true);
+            }
+        }
+    }
+
+    @Override
+    public PlayerState loadArchived(String contextId, UUID playerId) throws IOException {
+        Path file = bucketFile(contextId, bucketOf(playerId));
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Map<UUID, PlayerState> archived = new HashMap<>();
+        PlayerStateCodec.readInto(file, archived);
+        return archived.get(playerId);
+    }
+
+    @Override
+    public void exportArchive(String contextId, Writer out) throws IOException {
+        long resetEpoch = delegate.loadResetEpoch(contextId);
+        StringBuilder line = new StringBuilder();
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            PlayerStateCodec.forEachRecord(bucketFile(contextId, bucket), (playerId, state) -> {
+                if (state != null) {
+                    line.setLength(0);
+                    PlayerStateCodec.appendLine(line, playerId, PlayerStateTable.reconcile(state, resetEpoch));
+                    out.append(line);
+                }
+            });
+        }
+    }
+
+    @Override
+    public boolean supportsResetEpoch() {
+        return delegate.supportsResetEpoch();
+    }
+
+    @Override
+    public long loadResetEpoch(String contextId) throws IOException {
+        return delegate.loadResetEpoch(contextId);
+    }
+
+    @Override
+    public void writeResetEpoch(String contextId, long resetEpoch) throws IOException {
+        delegate.writeResetEpoch(contextId, resetEpoch);
+    }
+
+    @Override
+    public void setBackgroundFailureHandler(Consumer<IOException> handler) {
+        delegate.setBackgroundFailureHandler(handler);
+    }
+
+    @Override
+    public Set<String> listContexts() throws IOException {
+        return delegate.listContexts();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    private static int bucketOf(UUID playerId) {
+        return (int) Long.remainderUnsigned(playerId.getMostSignificantBits() ^ playerId.getLeastSignificantBits(), BUCKET_COUNT);
+    }
+
+    private Path bucketFile(String contextId, int bucket) {
+        return archiveDirectory.resolve(contextId).resolve("bucket-" + bucket + ".dat");
+    }
+}
@@ -0,0 +1,129 @@
+package com.offworklock.player;
+
+import com.offworklock.util.AtomicFiles;
+import com.offworklock.util.RateLimitedOutputStream;
+import com.offworklock.util.RateLimiter;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Output of {@link PlayerStateManager#backup}: one {@code <context>.dat} text file per context,
+ * either in a directory or as the entries of a zip archive, written at a limited rate that holds
+ * across the whole backup. Directory files appear one by one as they are completed; an archive
+ * appears only once complete.
+ */
+final class BackupWriter implements Closeable {
+
+    private final Path target;
+    private final RateLimiter limiter;
+    private final FileChannel zipChannel;
+    private final ZipOutputStream zip;
+    private boolean finished;
+
+    private BackupWriter(Path target, long bytesPerSecond, FileChannel zipChannel) {
+        this.target = target;
+        this.limiter = new RateLimiter(bytesPerSecond);
+        this.zipChannel = zipChannel;
+        if (zipChannel != null) {
+            zip = new ZipOutputStream(new RateLimitedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(zipChannel), 1 << 16), limiter),
+                    StandardCharsets.UTF_8);
+        } else {
+            zip = null;
+        }
+    }
+
+    /**
+     * Opens a zip archive if {@code target} ends in {@code .zip}, otherwise a directory.
+     */
+    static BackupWriter open(Path target, long bytesPerSecond) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        if (!target.getFileName().toString().endsWith(".zip")) {
+            Files.createDirectories(target);
+            return new BackupWriter(target, bytesPerSecond, null);
+        }
+        FileChannel channel = FileChannel.open(AtomicFiles.tempFile(target),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new BackupWriter(target, bytesPerSecond, channel);
+    }
+
+    void writeContext(String contextId, Map<UUID, PlayerState> records, StateStore store) throws IOException {
+        String name = contextId + ".dat";
+        if (zip != null) {
+            zip.putNextEntry(new ZipEntry(name));
+            writeRecords(zip, contextId, records, store);
+            zip.closeEntry();
+            return;
+        }
+        AtomicFiles.write(target.resolve(name),
+                out -> writeRecords(new RateLimitedOutputStream(out, limiter), contextId, records, store), true);
+    }
+
+    /**
+     * Completes the backup. Until then an archive exists only under its temp name.
+     *
+     * @return bytes written
+     */
+    long finish() throws IOException {
+        if (zip != null) {
+            zip.finish();
+            zip.flush();
+            zipChannel.force(true);
+            zipChannel.close();
+            AtomicFiles.commit(AtomicFiles.tempFile(target), target, true);
+        } else {
+            AtomicFiles.forceDirectory(target);
+        }
+        finished = true;
+        return limiter.getAcquired();
+    }
+
+    /**
+     * Discards an unfinished archive.
+     */
+    @Override
+    public void close() throws IOException {
+        if (zip != null && !finished) {
+            zipChannel.close();
+            Files.deleteIfExists(AtomicFiles.tempFile(target));
+        }
+    }
+
+    /**
+     * Archived players go first, so that a player present in both resolves to the context's copy,
+     * as later lines override earlier ones. The archive is read as it is now rather than as of
+     * {@code records}; see {@link PlayerStateManager#backup(Path, long)}.
+     */
+    private static void writeRecords(OutputStream stream, String contextId, Map<UUID, PlayerState> records,
+                                     StateStore store) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16);
+        out.write("# Player state for context " + contextId + "\n");
+        store.exportArchive(contextId, out);
+        StringBuilder line = new StringBuilder();
+        for (Map.Entry<UUID, PlayerState> entry : records.entrySet()) {
+            line.setLength(0);
+            PlayerStateCodec.appendLine(line, entry.getKey(), entry.getValue());
+            out.append(line);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,301 @@
+package com.offworklock.player;
+
+import com.offworklock.util.AtomicFiles;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Splits every context into a fixed number of text files by UUID hash,
+ * {@code <context>/bucket-<n>.dat}, in the same line format as {@link TextStateStore}. A write
+ * takes only the changed players and rewrites only the buckets holding them, so the cost of a
+ * single update grows with the size of a bucket, not of the context.
+ * <p>
+ * Contexts still stored as a single {@code <context>.dat}, or bucketed with a different bucket
+ * count, are read as they are and rewritten in the current layout on their next write; the old
+ * files are deleted once the new buckets are in place. {@link #importLegacy} converts a single
+ * file ahead of time without loading it.
+ */
+public final class BucketedStateStore implements StateStore {
+
+    private static final String BUCKET_PREFIX = "bucket-";
+    private static final String BUCKET_SUFFIX = ".dat";
+
+    private final Path storageDirectory;
+    private final int bucketCount;
+    private final Set<String> pendingRelayout = ConcurrentHashMap.newKeySet();
+
+    public BucketedStateStore(Path storageDirectory, int bucketCount) throws IOException {
+        this.storageDirectory = Objects.requireNonNull(storageDirectory, "storageDirectory");
+        if (bucketCount < 1) {
+            throw new IllegalArgumentException("bucketCount must be at least 1: " + bucketCount);
+        }
+        this.bucketCount = bucketCount;
+        Files.createDirectories(storageDirectory);
+    }
+
+    @Override
+    public Map<UUID, PlayerState> load(String contextId) throws IOException {
+        Map<UUID, PlayerState> loaded = new LinkedHashMap<>();
+        boolean relayout = Files.exists(legacyFile(contextId));
+        PlayerStateCodec.readInto(legacyFile(contextId), loaded);
+        Path directory = contextDirectory(contextId);
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, BUCKET_PREFIX + "*" + BUCKET_SUFFIX)) {
+                for (Path file : stream) {
+                    int bucket = bucketIndex(file);
+                    Map<UUID, PlayerState> records = new LinkedHashMap<>();
+                    PlayerStateCodec.readInto(file, records);
+                    for (UUID playerId : records.keySet()) {
+                        if (bucketOf(playerId) != bucket) {
+                            relayout = true;
+                            break;
+                        }
+                    }
+                    loaded.putAll(records);
+                }
+            }
+        }
+        if (relayout) {
+            pendingRelayout.add(contextId);
+        } else {
+            pendingRelayout.remove(contextId);
+        }
+        return loaded;
+    }
+
+    /**
+     * Reads back only the buckets holding a changed player and replaces those players in them, so
+     * the manager hands over just the changed players rather than a snapshot of the context. A
+     * pending relayout reads the whole context and rewrites every bucket.
+     */
+    @Override
+    public void write(String contextId, Map<UUID, PlayerState> records, Set<UUID> changed, boolean force) throws IOException {
+        boolean relayout = pendingRelayout.contains(contextId);
+        Map<Integer, Map<UUID, PlayerState>> buckets = new TreeMap<>();
+        if (relayout) {
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                buckets.put(bucket, new LinkedHashMap<>());
+            }
+            for (Map.Entry<UUID, PlayerState> entry : load(contextId).entrySet()) {
+                buckets.get(bucketOf(entry.getKey())).put(entry.getKey(), entry.getValue());
+            }
+        } else {
+            for (UUID playerId : changed) {
+                int bucket = bucketOf(playerId);
+                if (!buckets.containsKey(bucket)) {
+                    Map<UUID, PlayerState> stored = new LinkedHashMap<>();
+                    PlayerStateCodec.readInto(bucketFile(contextId, bucket), stored);
+                    buckets.put(bucket, stored);
+                }
+            }
+        }
+        for (UUID playerId : changed) {
+            PlayerState state = records.get(playerId);
+            Map<UUID, PlayerState> bucket = buckets.get(bucketOf(playerId));
+            if (state != null) {
+                bucket.put(playerId, state);
+            } else {
+                bucket.remove(playerId);
+            }
+        }
+
+        Path directory = contextDirectory(contextId);
+        if (!Files.isDirectory(directory)) {
+            Files.createDirectories(directory);
+            if (force) {
+                AtomicFiles.forceDirectory(storageDirectory);
+            }
+        }
+        StringBuilder contents = new StringBuilder();
+        for (Map.Entry<Integer, Map<UUID, PlayerState>> bucket : buckets.entrySet()) {
+            contents.setLength(0);
+            contents.append("# Player state for context ").append(contextId)
+                    .append(", bucket ").append(bucket.getKey()).append(" of ").append(bucketCount).append('\n');
+            for (Map.Entry<UUID, PlayerState> entry : bucket.getValue().entrySet()) {
+                PlayerStateCodec.appendLine(contents, entry.getKey(), entry.getValue());
+            }
+            AtomicFiles.writeString(bucketFile(contextId, bucket.getKey()), contents.toString(), force);
+        }
+        if (relayout) {
+            removeStaleFiles(contextId, force);
+            pendingRelayout.remove(contextId);
+        }
+    }
+
+    /**
+     * Splits the text snapshot into buckets in a single streaming pass, one open temp file per
+     * bucket, and deletes it once every bucket is in place. Contexts that already have buckets are
+     * left to the relayout on their next write.
+     */
+    @Override
+    public boolean importLegacy(String contextId) throws IOException {
+        Path legacy = legacyFile(contextId);
+        Path directory = contextDirectory(contextId);
+        if (!Files.exists(legacy) || hasBuckets(directory)) {
+            return false;
+        }
+        Files.createDirectories(directory);
+        Path[] temps = new Path[bucketCount];
+        Writer[] writers = new Writer[bucketCount];
+        try {
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                temps[bucket] = AtomicFiles.tempFile(bucketFile(contextId, bucket));
+                writers[bucket] = Files.newBufferedWriter(temps[bucket], StandardCharsets.UTF_8);
+                writers[bucket].write("# Player state for context " + contextId
+                        + ", bucket " + bucket + " of " + bucketCount + "\n");
+            }
+            StringBuilder line = new StringBuilder();
+            PlayerStateCodec.forEachRecord(legacy, (playerId, state) -> {
+                if (state != null) {
+                    line.setLength(0);
+                    PlayerStateCodec.appendLine(line, playerId, state);
+                    writers[bucketOf(playerId)].append(line);
+                }
+            });
+        } finally {
+            closeAll(writers);
+        }
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            AtomicFiles.commit(temps[bucket], bucketFile(contextId, bucket), true);
+        }
+        AtomicFiles.forceDirectory(storageDirectory);
+        removeStaleFiles(contextId, true);
+        pendingRelayout.remove(contextId);
+        return true;
+    }
+
+    /**
+     * Every bucket file is complete on its own, so other processes can share them.
+     */
+    @Override
+    public boolean supportsSharing() {
+        return true;
+    }
+
+    @Override
+    public void release(String contextId) {
+        pendingRelayout.remove(contextId);
+    }
+
+    @Override
+    public boolean supportsResetEpoch() {
+        return true;
+    }
+
+    @Override
+    public long loadResetEpoch(String contextId) throws IOException {
+        return ContextFiles.loadResetEpoch(storageDirectory, contextId);
+    }
+
+    @Override
+    public void writeResetEpoch(String contextId, long resetEpoch) throws IOException {
+        ContextFiles.writeResetEpoch(storageDirectory, contextId, resetEpoch);
+    }
+
+    @Override
+    public Set<String> listContexts() throws IOException {
+        Set<String> contexts = ContextFiles.list(storageDirectory, ".dat");
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(storageDirectory, Files::isDirectory)) {
+            for (Path directory : stream) {
+                if (hasBuckets(directory)) {
+                    contexts.add(directory.getFileName().toString());
+                }
+            }
+        }
+        return contexts;
+    }
+
+    private static boolean hasBuckets(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return false;
+        }
+        try (DirectoryStream<Path> buckets = Files.newDirectoryStream(directory, BUCKET_PREFIX + "*" + BUCKET_SUFFIX)) {
+            return buckets.iterator().hasNext();
+        }
+    }
+
+    private static void closeAll(Writer[] writers) throws IOException {
+        IOException failure = null;
+        for (Writer writer : writers) {
+            if (writer == null) {
+                continue;
+            }
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                } else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void removeStaleFiles(String contextId, boolean force) throws IOException {
+        boolean removed = Files.deleteIfExists(legacyFile(contextId));
+        if (removed && force) {
+            AtomicFiles.forceDirectory(storageDirectory);
+        }
+        removed = false;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(contextDirectory(contextId), BUCKET_PREFIX + "*" + BUCKET_SUFFIX)) {
+            for (Path file : stream) {
+                int bucket = bucketIndex(file);
+                if (bucket < 0 || bucket >= bucketCount) {
+                    Files.delete(file);
+                    removed = true;
+                }
+            }
+        }
+        if (removed && force) {
+            AtomicFiles.forceDirectory(contextDirectory(contextId));
+        }
+    }
+
+    private int bucketOf(UUID playerId) {
+        return bucketOf(playerId.getMostSignificantBits(), playerId.getLeastSignificantBits());
+    }
+
+    private int bucketOf(long most, long least) {
+        return (int) Long.remainderUnsigned(most ^ least, bucketCount);
+    }
+
+    /**
+     * Returns the bucket number in a bucket file name, or -1 if the name is not a bucket file.
+     */
+    private static int bucketIndex(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Integer.parseInt(name.substring(BUCKET_PREFIX.length(), name.length() - BUCKET_SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException ex) {
+            return -1;
+        }
+    }
+
+    private Path legacyFile(String contextId) {
+        return storageDirectory.resolve(contextId + ".dat");
+    }
+
+    private Path contextDirectory(String contextId) {
+        return storageDirectory.resolve(contextId);
+    }
+
+    private Path bucketFile(String contextId, int bucket) {
+        return contextDirectory(contextId).resolve(BUCKET_PREFIX + bucket + BUCKET_SUFFIX);
+    }
+}
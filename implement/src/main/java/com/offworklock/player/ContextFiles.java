@@ -0,0 +1,72 @@
+package com.offworklock.player;
+
+import com.offworklock.util.AtomicFiles;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Helpers for stores that keep one or more files per context in a flat directory.
+ * <p>
+ * Off-work reset epochs are kept the same way by every disk store, in a {@code <context>.epoch}
+ * file beside the context's own files, so they mean the same thing whichever backend reads them.
+ */
+final class ContextFiles {
+
+    private ContextFiles() {
+    }
+
+    /**
+     * Returns the context ids of all files in {@code directory} ending in one of {@code suffixes}.
+     * Leftover temp files of interrupted atomic writes are ignored.
+     */
+    static Set<String> list(Path directory, String... suffixes) throws IOException {
+        Set<String> contexts = new TreeSet<>();
+        if (!Files.isDirectory(directory)) {
+            return contexts;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                for (String suffix : suffixes) {
+                    if (name.endsWith(suffix) && name.length() > suffix.length()) {
+                        contexts.add(name.substring(0, name.length() - suffix.length()));
+                        break;
+                    }
+                }
+            }
+        }
+        return contexts;
+    }
+
+    /**
+     * Returns the off-work reset epoch stored for a context, or 0 if it was never reset.
+     */
+    static long loadResetEpoch(Path directory, String contextId) throws IOException {
+        Path file = resetEpochFile(directory, contextId);
+        if (!Files.exists(file)) {
+            return 0L;
+        }
+        try {
+            return Math.max(0L, Long.parseLong(Files.readString(file, StandardCharsets.UTF_8).trim()));
+        } catch (NumberFormatException ex) {
+            return 0L;
+        }
+    }
+
+    /**
+     * Durably stores the off-work reset epoch of a context.
+     */
+    static void writeResetEpoch(Path directory, String contextId, long resetEpoch) throws IOException {
+        AtomicFiles.writeString(resetEpochFile(directory, contextId), Long.toString(resetEpoch), true);
+    }
+
+    private static Path resetEpochFile(Path directory, String contextId) {
+        return directory.resolve(contextId + ".epoch");
+    }
+}
@@ -0,0 +1,53 @@
+package com.offworklock.player;
+
+import java.util.Objects;
+
+/**
+ * A context id resolved once by {@link PlayerStateManager#resolveContext(String)}.
+ * <p>
+ * Every {@link PlayerStateManager} method and service that takes a context id also accepts a
+ * handle. A handle carries the sanitized id and remembers the loaded context, so naming a context
+ * through it costs a field read instead of sanitizing the id and looking it up on every call. Keep
+ * one per world for as long as the world is loaded; it stays valid across cache evictions and
+ * reloads. Handles only work with the manager that resolved them.
+ */
+public final class ContextHandle {
+
+    private final PlayerStateManager owner;
+    private final String contextId;
+    private String safeContextId;
+    volatile PlayerStateManager.LoadedContext loaded;
+
+    ContextHandle(PlayerStateManager owner, String contextId) {
+        this.owner = Objects.requireNonNull(owner, "owner");
+        this.contextId = contextId;
+    }
+
+    /**
+     * Returns the id the handle was resolved from.
+     */
+    public String getContextId() {
+        return contextId;
+    }
+
+    /**
+     * Returns the sanitized id, computing it on first use. Racing threads compute the same string.
+     */
+    String safeContextId() {
+        String safe = safeContextId;
+        if (safe == null) {
+            safe = PlayerStateManager.sanitizeContextId(contextId);
+            safeContextId = safe;
+        }
+        return safe;
+    }
+
+    PlayerStateManager owner() {
+        return owner;
+    }
+
+    @Override
+    public String toString() {
+        return "ContextHandle{" + safeContextId() + "}";
+    }
+}
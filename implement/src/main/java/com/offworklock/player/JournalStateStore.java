@@ -0,0 +1,298 @@
+package com.offworklock.player;
+
+import com.offworklock.util.AtomicFiles;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Text snapshot plus an append-only change log per context.
+ * <p>
+ * A write only appends the changed players to {@code <context>.journal}. Every record is a full
+ * player state line, so replaying the journal over the snapshot in file order always yields the
+ * latest state. Once a journal holds {@code compactionThreshold} records it is compacted in the
+ * background: the live journal is rotated to {@code <context>.journal.compacting}, snapshot and
+ * rotated journal are merged into a fresh snapshot, and the rotated file is deleted. Appends
+ * continue into the new journal meanwhile, and a crash at any point is recovered by replaying both
+ * files.
+ */
+public final class JournalStateStore implements StateStore {
+
+    private final Path storageDirectory;
+    private final int compactionThreshold;
+    private final Map<String, JournalState> journals = new ConcurrentHashMap<>();
+    private final ExecutorService compactor;
+    private volatile Consumer<IOException> failureHandler = ignored -> {
+    };
+
+    public JournalStateStore(Path storageDirectory, int compactionThreshold) throws IOException {
+        this.storageDirectory = Objects.requireNonNull(storageDirectory, "storageDirectory");
+        this.compactionThreshold = Math.max(1, compactionThreshold);
+        Files.createDirectories(storageDirectory);
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "OffWorkLock-JournalCompactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public Map<UUID, PlayerState> load(String contextId) throws IOException {
+        JournalState journal = journal(contextId);
+        synchronized (journal) {
+            // The rotated journal is read before the snapshot: a compaction finishing in between
+            // then leaves a new snapshot that already contains it, and overlaying it again is harmless.
+            Path compacting = compactingFile(contextId);
+            truncateTornTail(compacting);
+            Map<UUID, PlayerState> rotated = new LinkedHashMap<>();
+            PlayerStateCodec.readChangesInto(compacting, rotated);
+            Map<UUID, PlayerState> loaded = new LinkedHashMap<>();
+            PlayerStateCodec.readInto(snapshotFile(contextId), loaded);
+            PlayerStateCodec.applyChanges(rotated, loaded);
+            Path live = journalFile(contextId);
+            truncateTornTail(live);
+            journal.records = PlayerStateCodec.readInto(live, loaded);
+            return loaded;
+        }
+    }
+
+    /**
+     * Appends one line per record, or a removal line for a player mapped to {@code null}. A crash
+     * mid-append can only tear the final line, which the next load cuts off.
+     */
+    @Override
+    public void write(String contextId, Map<UUID, PlayerState> records, Set<UUID> changed, boolean force) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<UUID, PlayerState> entry : records.entrySet()) {
+            if (entry.getValue() != null) {
+                PlayerStateCodec.appendLine(builder, entry.getKey(), entry.getValue());
+            } else {
+                PlayerStateCodec.appendRemoval(builder, entry.getKey());
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.UTF_8));
+        JournalState journal = journal(contextId);
+        synchronized (journal) {
+            Path live = journalFile(contextId);
+            // The first append, and the first after a rotation, creates the file, whose directory
+            // entry has to be forced too.
+            boolean created = force && !Files.exists(live);
+            try (FileChannel channel = FileChannel.open(live,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (force) {
+                    channel.force(false);
+                }
+            }
+            if (created) {
+                AtomicFiles.forceDirectory(storageDirectory);
+            }
+            journal.records += records.size();
+            if (journal.records >= compactionThreshold && !journal.compacting && !compactor.isShutdown()) {
+                journal.compacting = true;
+                compactor.execute(() -> compactQuietly(contextId, journal));
+            }
+        }
+    }
+
+    /**
+     * Drops the compaction bookkeeping of the context; a compaction still running keeps it until
+     * it is done, so that no second one starts on the same files meanwhile.
+     */
+    @Override
+    public void release(String contextId) {
+        journals.computeIfPresent(contextId, (ignored, journal) -> {
+            synchronized (journal) {
+                journal.released = true;
+                return journal.compacting ? journal : null;
+            }
+        });
+    }
+
+    @Override
+    public void setBackgroundFailureHandler(Consumer<IOException> handler) {
+        failureHandler = Objects.requireNonNull(handler, "handler");
+    }
+
+    @Override
+    public boolean supportsResetEpoch() {
+        return true;
+    }
+
+    @Override
+    public long loadResetEpoch(String contextId) throws IOException {
+        return ContextFiles.loadResetEpoch(storageDirectory, contextId);
+    }
+
+    @Override
+    public void writeResetEpoch(String contextId, long resetEpoch) throws IOException {
+        ContextFiles.writeResetEpoch(storageDirectory, contextId, resetEpoch);
+    }
+
+    @Override
+    public Set<String> listContexts() throws IOException {
+        return ContextFiles.list(storageDirectory, ".dat", ".journal", ".journal.compacting");
+    }
+
+    /**
+     * Waits for running compactions. Journals left uncompacted are replayed on the next load.
+     */
+    @Override
+    public void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void compactQuietly(String contextId, JournalState journal) {
+        try {
+            compact(contextId, journal);
+        } catch (IOException ex) {
+            // The rotated journal is kept and replayed on load; compaction is retried later.
+            failureHandler.accept(ex);
+        } finally {
+            journals.computeIfPresent(contextId, (ignored, current) -> {
+                synchronized (current) {
+                    current.compacting = false;
+                    return current.released ? null : current;
+                }
+            });
+        }
+    }
+
+    /**
+     * Only the rotation holds the journal lock; the merge reads files nobody else writes while a
+     * compaction runs, so appends are never blocked by it.
+     */
+    private void compact(String contextId, JournalState journal) throws IOException {
+        synchronized (journal) {
+            rotate(contextId);
+            journal.records = 0;
+        }
+        Map<UUID, PlayerState> merged = new LinkedHashMap<>();
+        PlayerStateCodec.readInto(snapshotFile(contextId), merged);
+        PlayerStateCodec.readInto(compactingFile(contextId), merged);
+        // The snapshot must be durable before the journal it replaces is deleted.
+        AtomicFiles.writeString(snapshotFile(contextId), PlayerStateCodec.format(contextId, merged), true);
+        Files.deleteIfExists(compactingFile(contextId));
+    }
+
+    /**
+     * Moves the live journal aside so new appends start an empty file. If a previous compaction
+     * never finished, the live records are appended to the leftover rotated file instead, which is
+     * forced before the live journal goes, since that may hold records already acknowledged as
+     * durable. Either way the directory is forced, so the records cannot vanish with an entry.
+     */
+    private void rotate(String contextId) throws IOException {
+        Path live = journalFile(contextId);
+        if (!Files.exists(live)) {
+            return;
+        }
+        Path compacting = compactingFile(contextId);
+        if (Files.exists(compacting)) {
+            ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(live));
+            try (FileChannel channel = FileChannel.open(compacting, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                while (records.hasRemaining()) {
+                    channel.write(records);
+                }
+                channel.force(false);
+            }
+            Files.delete(live);
+        } else {
+            Files.move(live, compacting);
+        }
+        AtomicFiles.forceDirectory(storageDirectory);
+    }
+
+    /**
+     * Cuts off a line torn by a crash, so it is neither replayed nor glued onto the next append.
+     * Every append ends with a line break, so an unterminated last line was never written whole,
+     * even if what made it to disk happens to parse.
+     */
+    private static void truncateTornTail(Path journal) throws IOException {
+        if (!Files.exists(journal)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long end = channel.size();
+            ByteBuffer chunk = ByteBuffer.allocate(4096);
+            while (end > 0) {
+                long start = Math.max(0L, end - chunk.capacity());
+                chunk.clear().limit((int) (end - start));
+                while (chunk.hasRemaining()) {
+                    if (channel.read(chunk, start + chunk.position()) < 0) {
+                        throw new IOException("Journal shrank while reading " + journal);
+                    }
+                }
+                for (int i = chunk.limit() - 1; i >= 0; i--) {
+                    if (chunk.get(i) == '\n') {
+                        end = start + i + 1;
+                        if (end < channel.size()) {
+                            channel.truncate(end);
+                        }
+                        return;
+                    }
+                }
+                end = start;
+            }
+            channel.truncate(0L);
+        }
+    }
+
+    private JournalState journal(String contextId) {
+        return journals.compute(contextId, (ignored, journal) -> {
+            if (journal == null) {
+                return new JournalState();
+            }
+            synchronized (journal) {
+                journal.released = false;
+            }
+            return journal;
+        });
+    }
+
+    private Path snapshotFile(String contextId) {
+        return storageDirectory.resolve(contextId + ".dat");
+    }
+
+    private Path journalFile(String contextId) {
+        return storageDirectory.resolve(contextId + ".journal");
+    }
+
+    private Path compactingFile(String contextId) {
+        return storageDirectory.resolve(contextId + ".journal.compacting");
+    }
+
+    /**
+     * Compaction bookkeeping of one context, guarded by its own monitor.
+     */
+    private static final class JournalState {
+        int records;
+        boolean compacting;
+        /** Released while compacting; dropped once the compaction is done. */
+        boolean released;
+    }
+}
@@ -0,0 +1,112 @@
+package com.offworklock.player;
+
+import com.offworklock.config.ConfigData;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Converts contexts still kept as legacy text snapshots ({@code <context>.dat}) into the format of
+ * a store, through {@link StateStore#importLegacy}. Every file is streamed line by line, so memory
+ * use does not grow with the size of a context, and several files are converted at once.
+ * <p>
+ * Runs on server start when {@link ConfigData#isMigrateLegacyOnStart()} is set, or offline:
+ * <pre>
+ * java -cp offworklock.jar com.offworklock.player.LegacyStateConverter &lt;playerDataDirectory&gt; &lt;backend&gt; [concurrency]
+ * </pre>
+ */
+public final class LegacyStateConverter {
+
+    private final StateStore store;
+
+    public LegacyStateConverter(StateStore store) {
+        this.store = Objects.requireNonNull(store, "store");
+    }
+
+    /**
+     * Converts every stored context that needs it.
+     *
+     * @return number of contexts converted
+     */
+    public int convertAll(int concurrency) throws IOException {
+        return convert(store.listContexts(), concurrency);
+    }
+
+    /**
+     * Converts the given contexts, up to {@code concurrency} at once on virtual threads. A
+     * context that fails to convert is left as it is and is still read through the store's
+     * regular fallback.
+     *
+     * @return number of contexts converted
+     * @throws IOException with the first failure (others suppressed) once all contexts are done
+     */
+    public int convert(Collection<String> contextIds, int concurrency) throws IOException {
+        Semaphore permits = new Semaphore(Math.max(1, concurrency));
+        List<Future<Boolean>> conversions = new ArrayList<>(contextIds.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String contextId : contextIds) {
+                conversions.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return store.importLegacy(contextId);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        }
+
+        int converted = 0;
+        IOException failure = null;
+        for (Future<Boolean> conversion : conversions) {
+            try {
+                if (conversion.get()) {
+                    converted++;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while converting player state", ex);
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                IOException io = cause instanceof IOException e ? e : new IOException("Failed to convert player state", cause);
+                if (failure == null) {
+                    failure = io;
+                } else {
+                    failure.addSuppressed(io);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return converted;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: LegacyStateConverter <playerDataDirectory> <backend> [concurrency]");
+            System.exit(2);
+            return;
+        }
+        ConfigData config = ConfigData.builder()
+                .storageBackend(ConfigData.StorageBackend.valueOf(args[1].toUpperCase(Locale.ROOT)))
+                .build();
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        try (StateStore store = StateStore.create(Path.of(args[0]), config)) {
+            int converted = new LegacyStateConverter(store).convertAll(concurrency);
+            System.out.printf(Locale.ROOT, "Converted %d context(s) to %s in %d ms%n",
+                    converted, config.getStorageBackend(), (System.nanoTime() - start) / 1_000_000L);
+        }
+    }
+}
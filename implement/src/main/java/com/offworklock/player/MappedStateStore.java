@@ -0,0 +1,402 @@
+package com.offworklock.player;
+
+import com.offworklock.util.AtomicFiles;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fixed-width binary context files ({@code <context>.bin}) accessed through a memory mapping.
+ * <p>
+ * Layout: a 32 byte header ({@code magic, version, recordCount, reserved}) followed by 32 byte
+ * records ({@code uuidMost, uuidLeast, points, forcedExitCount, flags, checksum, reserved byte,
+ * lastSeen}), with the last-seen time as unsigned epoch seconds. Each player keeps the slot it was
+ * first written to, so an update patches its record in place and a new player is appended after
+ * the last record. A removed player's slot is filled with the last record.
+ * <p>
+ * Records are aligned to their size, so none spans a disk sector or page. The pages of a mapping
+ * still reach the disk in no particular order and at any time, so a record can be caught halfway
+ * through an update; its 16 bit checksum then fails and the record is dropped on the next open,
+ * losing that player. So is an appended record still zero-filled under a count that reached the
+ * disk first.
+ * <p>
+ * This is the high-throughput backend: a write costs one 32 byte store per changed player and no
+ * system call unless it has to be forced. Writes to different contexts run in parallel; callers
+ * must serialize writes of the same context.
+ */
+public final class MappedStateStore implements StateStore {
+
+    private static final int MAGIC = 0x4F574C42; // "OWLB"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 32;
+    private static final int COUNT_OFFSET = 8;
+    private static final int CHECKSUM_OFFSET = 25;
+    private static final int LAST_SEEN_OFFSET = 28;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int IMPORT_BATCH_SIZE = 4096;
+
+    private static final int FLAG_CAN_OFF_WORK = 1;
+    private static final int FLAG_SESSION_OPEN = 1 << 1;
+
+    private final Path storageDirectory;
+    private final Map<String, MappedContext> open = new ConcurrentHashMap<>();
+
+    public MappedStateStore(Path storageDirectory) throws IOException {
+        this.storageDirectory = Objects.requireNonNull(storageDirectory, "storageDirectory");
+        Files.createDirectories(storageDirectory);
+    }
+
+    /**
+     * Maps the context file and reads every record. A context without a binary file but with a
+     * legacy text snapshot is imported from it once.
+     */
+    @Override
+    public Map<UUID, PlayerState> load(String contextId) throws IOException {
+        Map<UUID, PlayerState> loaded = new LinkedHashMap<>();
+        loadInto(contextId, loaded);
+        return loaded;
+    }
+
+    private synchronized void loadInto(String contextId, Map<UUID, PlayerState> target) throws IOException {
+        Path file = storageDirectory.resolve(contextId + ".bin");
+        boolean exists = Files.exists(file);
+        MappedContext context = open.get(contextId);
+        if (context == null) {
+            context = MappedContext.open(file);
+            open.put(contextId, context);
+        }
+        if (!exists) {
+            Map<UUID, PlayerState> legacy = new LinkedHashMap<>();
+            PlayerStateCodec.readInto(storageDirectory.resolve(contextId + ".dat"), legacy);
+            context.write(legacy, false);
+            target.putAll(legacy);
+            return;
+        }
+        context.readInto(target);
+    }
+
+    /**
+     * Patches the given records in place.
+     */
+    @Override
+    public void write(String contextId, Map<UUID, PlayerState> records, Set<UUID> changed, boolean force) throws IOException {
+        MappedContext context = open.get(contextId);
+        if (context == null) {
+            loadInto(contextId, new HashMap<>());
+            context = open.get(contextId);
+        }
+        context.write(records, force);
+        if (force) {
+            context.buffer.force();
+        }
+    }
+
+    /**
+     * Streams the text snapshot into a new binary file in batches, so only the slot index grows
+     * with the context. The file is built under a temp name and renamed into place when complete.
+     */
+    @Override
+    public synchronized boolean importLegacy(String contextId) throws IOException {
+        Path legacy = storageDirectory.resolve(contextId + ".dat");
+        Path file = storageDirectory.resolve(contextId + ".bin");
+        if (open.containsKey(contextId) || !Files.exists(legacy) || Files.exists(file)) {
+            return false;
+        }
+        Path temp = AtomicFiles.tempFile(file);
+        Files.deleteIfExists(temp);
+        MappedContext context = MappedContext.open(temp);
+        try {
+            Map<UUID, PlayerState> batch = new LinkedHashMap<>();
+            PlayerStateCodec.forEachRecord(legacy, (playerId, state) -> {
+                batch.put(playerId, state);
+                if (batch.size() >= IMPORT_BATCH_SIZE) {
+                    context.write(batch, false);
+                    batch.clear();
+                }
+            });
+            context.write(batch, false);
+        } finally {
+            context.close();
+        }
+        AtomicFiles.commit(temp, file, true);
+        return true;
+    }
+
+    /**
+     * Forces and unmaps a context that is no longer loaded. The next load maps it again.
+     */
+    @Override
+    public synchronized void release(String contextId) throws IOException {
+        MappedContext context = open.remove(contextId);
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Override
+    public boolean supportsResetEpoch() {
+        return true;
+    }
+
+    @Override
+    public long loadResetEpoch(String contextId) throws IOException {
+        return ContextFiles.loadResetEpoch(storageDirectory, contextId);
+    }
+
+    @Override
+    public void writeResetEpoch(String contextId, long resetEpoch) throws IOException {
+        ContextFiles.writeResetEpoch(storageDirectory, contextId, resetEpoch);
+    }
+
+    @Override
+    public Set<String> listContexts() throws IOException {
+        return ContextFiles.list(storageDirectory, ".bin", ".dat");
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        for (MappedContext context : open.values()) {
+            try {
+                context.close();
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                } else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+        open.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static final class MappedContext {
+        private final Path file;
+        private final FileChannel channel;
+        private final Map<UUID, Integer> slots = new HashMap<>();
+        private MappedByteBuffer buffer;
+        private int capacity;
+        private int count;
+
+        private MappedContext(Path file, FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+        }
+
+        static MappedContext open(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedContext context = new MappedContext(file, channel);
+            try {
+                context.init();
+            } catch (IOException ex) {
+                channel.close();
+                throw ex;
+            }
+            return context;
+        }
+
+        private void init() throws IOException {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                remap(INITIAL_CAPACITY);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(COUNT_OFFSET, 0);
+                return;
+            }
+            remap((int) Math.max(INITIAL_CAPACITY, (size - HEADER_SIZE) / RECORD_SIZE));
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a player state file (bad magic)");
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported player state file version " + buffer.getInt(4));
+            }
+            count = Math.min(buffer.getInt(COUNT_OFFSET), capacity);
+            int torn = 0;
+            for (int slot = 0; slot < count; ) {
+                int offset = HEADER_SIZE + slot * RECORD_SIZE;
+                if (buffer.getShort(offset + CHECKSUM_OFFSET) != checksum(offset) || isUnwritten(offset)) {
+                    moveLastInto(slot);
+                    count--;
+                    torn++;
+                    continue;
+                }
+                slots.put(new UUID(buffer.getLong(offset), buffer.getLong(offset + 8)), slot);
+                slot++;
+            }
+            if (torn > 0) {
+                buffer.force();
+                buffer.putInt(COUNT_OFFSET, count);
+                buffer.force();
+            }
+        }
+
+        void readInto(Map<UUID, PlayerState> target) {
+            for (int slot = 0; slot < count; slot++) {
+                int offset = HEADER_SIZE + slot * RECORD_SIZE;
+                target.put(new UUID(buffer.getLong(offset), buffer.getLong(offset + 8)), readRecord(offset));
+            }
+        }
+
+        private PlayerState readRecord(int offset) {
+            int flags = buffer.get(offset + 24);
+            return new PlayerState(
+                    buffer.getInt(offset + 16),
+                    (flags & FLAG_CAN_OFF_WORK) != 0,
+                    (flags & FLAG_SESSION_OPEN) != 0,
+                    buffer.getInt(offset + 20)
+            ).withLastSeen(Integer.toUnsignedLong(buffer.getInt(offset + LAST_SEEN_OFFSET)));
+        }
+
+        /**
+         * Removes, patches and appends the records, then updates the count. The mapping gives no
+         * ordering of its pages on disk, so a forced write flushes the slots that removals moved
+         * records into before their old slots are reused or dropped by the count, and appended
+         * records before the count covering them. An unforced write survives a process crash but
+         * not a power loss.
+         */
+        void write(Map<UUID, PlayerState> changed, boolean force) throws IOException {
+            int movedFrom = Integer.MAX_VALUE;
+            int movedTo = -1;
+            for (Map.Entry<UUID, PlayerState> entry : changed.entrySet()) {
+                if (entry.getValue() == null) {
+                    int slot = remove(entry.getKey());
+                    if (slot >= 0) {
+                        movedFrom = Math.min(movedFrom, slot);
+                        movedTo = Math.max(movedTo, slot);
+                    }
+                }
+            }
+            if (force && movedTo >= 0) {
+                buffer.force(HEADER_SIZE + movedFrom * RECORD_SIZE, (movedTo - movedFrom + 1) * RECORD_SIZE);
+            }
+            int appendedFrom = count;
+            for (Map.Entry<UUID, PlayerState> entry : changed.entrySet()) {
+                UUID playerId = entry.getKey();
+                if (entry.getValue() == null) {
+                    continue;
+                }
+                Integer slot = slots.get(playerId);
+                if (slot == null) {
+                    if (count == capacity) {
+                        remap(capacity * 2);
+                    }
+                    slot = count++;
+                    slots.put(playerId, slot);
+                    int offset = HEADER_SIZE + slot * RECORD_SIZE;
+                    buffer.putLong(offset, playerId.getMostSignificantBits());
+                    buffer.putLong(offset + 8, playerId.getLeastSignificantBits());
+                }
+                writeRecord(HEADER_SIZE + slot * RECORD_SIZE, entry.getValue());
+            }
+            if (force && count > appendedFrom) {
+                buffer.force(HEADER_SIZE + appendedFrom * RECORD_SIZE, (count - appendedFrom) * RECORD_SIZE);
+            }
+            buffer.putInt(COUNT_OFFSET, count);
+        }
+
+        /**
+         * Moves the last record into the removed player's slot. A crash in between leaves the
+         * moved record in both slots, which reads back as the same player twice.
+         *
+         * @return the slot a record was moved into, or -1 if none was
+         */
+        private int remove(UUID playerId) {
+            Integer slot = slots.remove(playerId);
+            if (slot == null) {
+                return -1;
+            }
+            boolean moved = moveLastInto(slot);
+            count--;
+            if (!moved) {
+                return -1;
+            }
+            int to = HEADER_SIZE + slot * RECORD_SIZE;
+            slots.put(new UUID(buffer.getLong(to), buffer.getLong(to + 8)), slot);
+            return slot;
+        }
+
+        /**
+         * Copies the last record over {@code slot}; the caller lowers the count.
+         *
+         * @return whether {@code slot} was not the last one
+         */
+        private boolean moveLastInto(int slot) {
+            int last = count - 1;
+            if (slot == last) {
+                return false;
+            }
+            int from = HEADER_SIZE + last * RECORD_SIZE;
+            int to = HEADER_SIZE + slot * RECORD_SIZE;
+            for (int i = 0; i < RECORD_SIZE; i += Long.BYTES) {
+                buffer.putLong(to + i, buffer.getLong(from + i));
+            }
+            return true;
+        }
+
+        private void writeRecord(int offset, PlayerState state) {
+            int flags = (state.canOffWork() ? FLAG_CAN_OFF_WORK : 0)
+                    | (state.isSessionOpen() ? FLAG_SESSION_OPEN : 0);
+            buffer.putInt(offset + 16, state.getPoints());
+            buffer.putInt(offset + 20, state.getForcedExitCount());
+            buffer.put(offset + 24, (byte) flags);
+            buffer.putInt(offset + LAST_SEEN_OFFSET, (int) state.getLastSeen());
+            buffer.putShort(offset + CHECKSUM_OFFSET, checksum(offset));
+        }
+
+        /**
+         * Whether the record at {@code offset} is still zero-filled, which its checksum matches.
+         * Such a slot is covered by a count that reached the disk before the appended record did;
+         * a record written as all zeros would only hold the state of a player never seen anyway.
+         */
+        private boolean isUnwritten(int offset) {
+            for (int i = 0; i < RECORD_SIZE; i += Long.BYTES) {
+                if (buffer.getLong(offset + i) != 0L) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Folds every other byte of the record at {@code offset} into 16 bits.
+         */
+        private short checksum(int offset) {
+            long hash = buffer.getLong(offset) * 0x9E3779B97F4A7C15L;
+            hash = (hash ^ buffer.getLong(offset + 8)) * 0x9E3779B97F4A7C15L;
+            hash = (hash ^ buffer.getLong(offset + 16)) * 0x9E3779B97F4A7C15L;
+            hash = (hash ^ (buffer.get(offset + 24) & 0xFFL)) * 0x9E3779B97F4A7C15L;
+            hash = (hash ^ Integer.toUnsignedLong(buffer.getInt(offset + LAST_SEEN_OFFSET))) * 0x9E3779B97F4A7C15L;
+            return (short) (hash ^ (hash >>> 16) ^ (hash >>> 32) ^ (hash >>> 48));
+        }
+
+        private void remap(int newCapacity) throws IOException {
+            capacity = newCapacity;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) newCapacity * RECORD_SIZE);
+        }
+
+        void close() throws IOException {
+            try {
+                buffer.force();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.offworklock.player;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps every context in memory only. Nothing survives the process; intended for tests,
+ * benchmarks and throwaway worlds.
+ */
+public final class MemoryStateStore implements StateStore {
+
+    private final Map<String, Map<UUID, PlayerState>> contexts = new ConcurrentHashMap<>();
+    private final Map<String, Long> resetEpochs = new ConcurrentHashMap<>();
+
+    @Override
+    public Map<UUID, PlayerState> load(String contextId) {
+        Map<UUID, PlayerState> stored = contexts.get(contextId);
+        if (stored == null) {
+            return new LinkedHashMap<>();
+        }
+        synchronized (stored) {
+            return new LinkedHashMap<>(stored);
+        }
+    }
+
+    @Override
+    public void write(String contextId, Map<UUID, PlayerState> records, Set<UUID> changed, boolean force) {
+        Map<UUID, PlayerState> stored = contexts.computeIfAbsent(contextId, ignored -> new LinkedHashMap<>());
+        synchronized (stored) {
+            PlayerStateCodec.applyChanges(records, stored);
+        }
+    }
+
+    @Override
+    public boolean supportsResetEpoch() {
+        return true;
+    }
+
+    @Override
+    public long loadResetEpoch(String contextId) {
+        return resetEpochs.getOrDefault(contextId, 0L);
+    }
+
+    @Override
+    public void writeResetEpoch(String contextId, long resetEpoch) {
+        resetEpochs.put(contextId, resetEpoch);
+    }
+
+    @Override
+    public Set<String> listContexts() {
+        return new TreeSet<>(contexts.keySet());
+    }
+}
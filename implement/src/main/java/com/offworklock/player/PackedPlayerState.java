@@ -0,0 +1,67 @@
+package com.offworklock.player;
+
+/**
+ * Primitive encoding of a {@link PlayerState} in a single {@code long}, so state transitions can be
+ * chained without allocating an object per step.
+ * <p>
+ * Layout: bits 0-31 points, bits 32-61 forced exit count (saturating at
+ * {@link #MAX_FORCED_EXIT_COUNT}), bit 62 off-work unlocked, bit 63 session open. The value
+ * {@code 0L} is the state of a player that has never been seen.
+ */
+public final class PackedPlayerState {
+
+    public static final long EMPTY = 0L;
+    public static final int MAX_FORCED_EXIT_COUNT = (1 << 30) - 1;
+
+    private static final long POINTS_MASK = 0xFFFF_FFFFL;
+    private static final int FORCED_EXIT_SHIFT = 32;
+    private static final long FORCED_EXIT_MASK = (long) MAX_FORCED_EXIT_COUNT << FORCED_EXIT_SHIFT;
+    private static final long CAN_OFF_WORK = 1L << 62;
+    private static final long SESSION_OPEN = 1L << 63;
+
+    private PackedPlayerState() {
+    }
+
+    public static long pack(int points, boolean canOffWork, boolean sessionOpen, int forcedExitCount) {
+        long packed = withPoints(EMPTY, points);
+        packed = withOffWork(packed, canOffWork);
+        packed = withSessionOpen(packed, sessionOpen);
+        return withForcedExitCount(packed, forcedExitCount);
+    }
+
+    public static int points(long packed) {
+        return (int) packed;
+    }
+
+    public static boolean canOffWork(long packed) {
+        return (packed & CAN_OFF_WORK) != 0;
+    }
+
+    public static boolean isSessionOpen(long packed) {
+        return (packed & SESSION_OPEN) != 0;
+    }
+
+    public static int forcedExitCount(long packed) {
+        return (int) ((packed & FORCED_EXIT_MASK) >>> FORCED_EXIT_SHIFT);
+    }
+
+    public static long withPoints(long packed, int points) {
+        return (packed & ~POINTS_MASK) | (points & POINTS_MASK);
+    }
+
+    public static long withOffWork(long packed, boolean canOffWork) {
+        return canOffWork ? packed | CAN_OFF_WORK : packed & ~CAN_OFF_WORK;
+    }
+
+    public static long withSessionOpen(long packed, boolean sessionOpen) {
+        return sessionOpen ? packed | SESSION_OPEN : packed & ~SESSION_OPEN;
+    }
+
+    /**
+     * Negative counts are stored as 0, counts above {@link #MAX_FORCED_EXIT_COUNT} as the maximum.
+     */
+    public static long withForcedExitCount(long packed, int forcedExitCount) {
+        long clamped = Math.max(0, Math.min(MAX_FORCED_EXIT_COUNT, forcedExitCount));
+        return (packed & ~FORCED_EXIT_MASK) | (clamped << FORCED_EXIT_SHIFT);
+    }
+}
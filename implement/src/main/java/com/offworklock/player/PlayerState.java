@@ -1,66 +1,109 @@
 package com.offworklock.player;
 
-import java.util.Objects;
-
 /**
  * Stores the current point total and off-work unlock flag for a player.
+ * <p>
+ * The state is kept in the {@link PackedPlayerState} encoding; this class is an immutable view over
+ * it. Code that chains several changes can work on {@link #toPacked()} directly and create a single
+ * instance at the end with {@link #withPacked(long)}. Next to it the state carries the time the
+ * player was last seen, which {@link PlayerStateManager} stamps on every change. That time is
+ * bookkeeping rather than part of the value: states are equal when their packed values are.
  */
 public final class PlayerState {
-    private final int points;
-    private final boolean canOffWork;
-    private final boolean sessionOpen;
-    private final int forcedExitCount;
+    private static final PlayerState EMPTY = new PlayerState(PackedPlayerState.EMPTY, 0L);
+
+    private final long packed;
+    private final long lastSeen;
 
     public PlayerState(int points, boolean canOffWork) {
         this(points, canOffWork, false, 0);
     }
 
     public PlayerState(int points, boolean canOffWork, boolean sessionOpen, int forcedExitCount) {
-        this.points = points;
-        this.canOffWork = canOffWork;
-        this.sessionOpen = sessionOpen;
-        this.forcedExitCount = Math.max(0, forcedExitCount);
+        this(PackedPlayerState.pack(points, canOffWork, sessionOpen, forcedExitCount), 0L);
+    }
+
+    private PlayerState(long packed, long lastSeen) {
+        this.packed = packed;
+        this.lastSeen = lastSeen;
+    }
+
+    /**
+     * Returns the state for a packed value. The state of an unseen player is a shared instance.
+     */
+    public static PlayerState fromPacked(long packed) {
+        return fromPacked(packed, 0L);
+    }
+
+    /**
+     * Returns the state for a packed value and a last-seen time in epoch seconds.
+     */
+    public static PlayerState fromPacked(long packed, long lastSeen) {
+        return packed == PackedPlayerState.EMPTY && lastSeen == 0L ? EMPTY : new PlayerState(packed, lastSeen);
+    }
+
+    public long toPacked() {
+        return packed;
+    }
+
+    /**
+     * Returns this instance if {@code packed} encodes the same state, otherwise a new one.
+     */
+    public PlayerState withPacked(long packed) {
+        return packed == this.packed ? this : fromPacked(packed, lastSeen);
+    }
+
+    /**
+     * Returns when the player was last seen in epoch seconds, or 0 if that was never recorded.
+     */
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    public PlayerState withLastSeen(long lastSeen) {
+        return lastSeen == this.lastSeen ? this : fromPacked(packed, lastSeen);
     }
 
     public int getPoints() {
-        return points;
+        return PackedPlayerState.points(packed);
     }
 
     public boolean canOffWork() {
-        return canOffWork;
+        return PackedPlayerState.canOffWork(packed);
     }
 
     public PlayerState withPoints(int points) {
-        return new PlayerState(points, this.canOffWork, this.sessionOpen, this.forcedExitCount);
+        return withPacked(PackedPlayerState.withPoints(packed, points));
     }
 
     public PlayerState withOffWork(boolean canOffWork) {
-        return new PlayerState(this.points, canOffWork, this.sessionOpen, this.forcedExitCount);
+        return withPacked(PackedPlayerState.withOffWork(packed, canOffWork));
     }
 
     public boolean isSessionOpen() {
-        return sessionOpen;
+        return PackedPlayerState.isSessionOpen(packed);
     }
 
     public PlayerState withSessionOpen(boolean sessionOpen) {
-        return new PlayerState(this.points, this.canOffWork, sessionOpen, this.forcedExitCount);
+        return withPacked(PackedPlayerState.withSessionOpen(packed, sessionOpen));
     }
 
     public int getForcedExitCount() {
-        return forcedExitCount;
+        return PackedPlayerState.forcedExitCount(packed);
     }
 
     public PlayerState withForcedExitCount(int forcedExitCount) {
-        return new PlayerState(this.points, this.canOffWork, this.sessionOpen, forcedExitCount);
+        return withPacked(PackedPlayerState.withForcedExitCount(packed, forcedExitCount));
     }
 
     @Override
     public String toString() {
         return "PlayerState{" +
-                "points=" + points +
-                ", canOffWork=" + canOffWork +
-                ", sessionOpen=" + sessionOpen +
-                ", forcedExitCount=" + forcedExitCount +
+                "points=" + getPoints() +
+                ", canOffWork=" + canOffWork() +
+                ", sessionOpen=" + isSessionOpen() +
+                ", forcedExitCount=" + getForcedExitCount() +
+                ", lastSeen=" + lastSeen +
                 '}';
     }
 
@@ -69,14 +112,11 @@ public final class PlayerState {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         PlayerState that = (PlayerState) o;
-        return points == that.points
-                && canOffWork == that.canOffWork
-                && sessionOpen == that.sessionOpen
-                && forcedExitCount == that.forcedExitCount;
+        return packed == that.packed;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(points, canOffWork, sessionOpen, forcedExitCount);
+        return Long.hashCode(packed);
     }
 }
@@ -0,0 +1,213 @@
+package com.offworklock.player;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Text line format shared by context snapshots and journals:
+ * {@code <uuid>,<points>,<canOffWork>,<sessionOpen>,<forcedExitCount>,<lastSeen>}. Trailing fields
+ * may be missing in files written by older versions. A line {@code -<uuid>} records that the
+ * player was removed; it only occurs in journals.
+ */
+final class PlayerStateCodec {
+
+    private PlayerStateCodec() {
+    }
+
+    /**
+     * Reads every well-formed line of {@code file} into {@code target}, later lines overriding earlier
+     * ones for the same player. Missing files are treated as empty.
+     *
+     * @return number of records applied
+     */
+    static int readInto(Path file, Map<UUID, PlayerState> target) throws IOException {
+        return read(file, target, false);
+    }
+
+    /**
+     * Like {@link #readInto}, but records a removed player as a {@code null} value instead of
+     * removing it, so the result can be applied on top of another map with {@link #applyChanges}.
+     */
+    static int readChangesInto(Path file, Map<UUID, PlayerState> target) throws IOException {
+        return read(file, target, true);
+    }
+
+    /**
+     * Puts every change into {@code target}; {@code null} values remove the player.
+     */
+    static void applyChanges(Map<UUID, PlayerState> changes, Map<UUID, PlayerState> target) {
+        for (Map.Entry<UUID, PlayerState> entry : changes.entrySet()) {
+            if (entry.getValue() != null) {
+                target.put(entry.getKey(), entry.getValue());
+            } else {
+                target.remove(entry.getKey());
+            }
+        }
+    }
+
+    private static int read(Path file, Map<UUID, PlayerState> target, boolean keepRemovals) throws IOException {
+        return forEachRecord(file, (playerId, state) -> {
+            if (state != null || keepRemovals) {
+                target.put(playerId, state);
+            } else {
+                target.remove(playerId);
+            }
+        });
+    }
+
+    /**
+     * Streams the well-formed lines of {@code file} to {@code consumer} in file order, one at a
+     * time, so files of any size are read in constant memory. A removal line is passed as a
+     * {@code null} state. Missing files are treated as empty.
+     *
+     * @return number of records passed
+     */
+    static int forEachRecord(Path file, RecordConsumer consumer) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        int applied = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (parseLine(line, consumer)) {
+                    applied++;
+                }
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Returns a writer that parses the lines written to it, as {@link #forEachRecord} does for a
+     * file, e.g. to take records from {@link StateStore#exportArchive} without a temp file. A last
+     * line without a line break is parsed on {@link Writer#flush()} or {@link Writer#close()}.
+     */
+    static Writer recordParser(RecordConsumer consumer) {
+        return new Writer() {
+            private final StringBuilder line = new StringBuilder();
+
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                for (int i = offset; i < offset + length; i++) {
+                    char c = buffer[i];
+                    if (c == '\n') {
+                        parseLine(line.toString(), consumer);
+                        line.setLength(0);
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (!line.isEmpty()) {
+                    parseLine(line.toString(), consumer);
+                    line.setLength(0);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    private static boolean parseLine(String line, RecordConsumer consumer) throws IOException {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return false;
+        }
+        if (trimmed.startsWith("-")) {
+            UUID playerId;
+            try {
+                playerId = UUID.fromString(trimmed.substring(1).trim());
+            } catch (IllegalArgumentException ex) {
+                return false;
+            }
+            consumer.accept(playerId, null);
+            return true;
+        }
+        String[] parts = trimmed.split(",");
+        if (parts.length < 3) {
+            return false;
+        }
+        UUID playerId;
+        PlayerState state;
+        try {
+            playerId = UUID.fromString(parts[0].trim());
+            int points = Integer.parseInt(parts[1].trim());
+            boolean canOffWork = Boolean.parseBoolean(parts[2].trim());
+            boolean sessionOpen = parts.length > 3 && Boolean.parseBoolean(parts[3].trim());
+            int forcedExitCount = 0;
+            if (parts.length > 4) {
+                try {
+                    forcedExitCount = Integer.parseInt(parts[4].trim());
+                } catch (NumberFormatException ignored) {
+                    forcedExitCount = 0;
+                }
+            }
+            long lastSeen = 0L;
+            if (parts.length > 5) {
+                try {
+                    lastSeen = Math.max(0L, Long.parseLong(parts[5].trim()));
+                } catch (NumberFormatException ignored) {
+                    lastSeen = 0L;
+                }
+            }
+            state = new PlayerState(points, canOffWork, sessionOpen, forcedExitCount).withLastSeen(lastSeen);
+        } catch (IllegalArgumentException ex) {
+            // Skip malformed entries.
+            return false;
+        }
+        consumer.accept(playerId, state);
+        return true;
+    }
+
+    static void appendLine(StringBuilder builder, UUID playerId, PlayerState state) {
+        builder.append(playerId)
+                .append(',')
+                .append(state.getPoints())
+                .append(',')
+                .append(state.canOffWork())
+                .append(',')
+                .append(state.isSessionOpen())
+                .append(',')
+                .append(state.getForcedExitCount())
+                .append(',')
+                .append(state.getLastSeen())
+                .append('\n');
+    }
+
+    /**
+     * Appends a line recording that the player was removed.
+     */
+    static void appendRemoval(StringBuilder builder, UUID playerId) {
+        builder.append('-').append(playerId).append('\n');
+    }
+
+    static String format(String contextId, Map<UUID, PlayerState> states) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("# Player state for context ").append(contextId).append('\n');
+        for (Map.Entry<UUID, PlayerState> entry : states.entrySet()) {
+            appendLine(builder, entry.getKey(), entry.getValue());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Receives the records of {@link #forEachRecord}.
+     */
+    @FunctionalInterface
+    interface RecordConsumer {
+        void accept(UUID playerId, PlayerState state) throws IOException;
+    }
+}
@@ -0,0 +1,118 @@
+package com.offworklock.player;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Secondary indexes over the players of one loaded context: who has off-work unlocked, and who
+ * has how many forced exits and points. Lookups cost the number of matches rather than a scan of
+ * the context. Players without forced exits are left out of that index, as no query asks for them.
+ * <p>
+ * Not thread-safe; the owning context keeps it in step with its table under the context lock.
+ * States are indexed as the table reports them, with its reset epoch applied, so a player whose
+ * unlock predates the last reset is not listed as unlocked.
+ */
+final class PlayerStateIndex {
+
+    private final Set<UUID> offWork = new HashSet<>();
+    private final NavigableMap<Integer, Set<UUID>> byForcedExits = new TreeMap<>();
+    private final NavigableMap<Integer, Set<UUID>> byPoints = new TreeMap<>();
+
+    static PlayerStateIndex build(Map<UUID, PlayerState> states) {
+        PlayerStateIndex index = new PlayerStateIndex();
+        for (Map.Entry<UUID, PlayerState> entry : states.entrySet()) {
+            index.add(entry.getKey(), entry.getValue().toPacked());
+        }
+        return index;
+    }
+
+    /**
+     * Records a change of one player; {@code null} stands for no row, before or after.
+     */
+    void update(UUID playerId, PlayerState before, PlayerState after) {
+        if (before != null) {
+            remove(playerId, before.toPacked());
+        }
+        if (after != null) {
+            add(playerId, after.toPacked());
+        }
+    }
+
+    /**
+     * Records a change of a player who has a row before and after, in the packed encoding.
+     */
+    void update(UUID playerId, long before, long after) {
+        remove(playerId, before);
+        add(playerId, after);
+    }
+
+    /**
+     * Catches up with a new reset epoch of {@code states}, which can only revoke unlocks, so only
+     * the players listed as unlocked are looked at.
+     */
+    void applyResetEpoch(PlayerStateTable states) {
+        offWork.removeIf(playerId -> {
+            int row = states.rowOf(playerId);
+            return row < 0 || !PackedPlayerState.canOffWork(states.packedAt(row));
+        });
+    }
+
+    Collection<UUID> offWorkUnlocked() {
+        return offWork;
+    }
+
+    Collection<UUID> forcedExitsAtLeast(int minForcedExits) {
+        return collect(byForcedExits.tailMap(Math.max(1, minForcedExits), true));
+    }
+
+    Collection<UUID> pointsBetween(int minPoints, int maxPoints) {
+        if (minPoints > maxPoints) {
+            return List.of();
+        }
+        return collect(byPoints.subMap(minPoints, true, maxPoints, true));
+    }
+
+    private void add(UUID playerId, long packed) {
+        if (PackedPlayerState.canOffWork(packed)) {
+            offWork.add(playerId);
+        }
+        int forcedExits = PackedPlayerState.forcedExitCount(packed);
+        if (forcedExits > 0) {
+            byForcedExits.computeIfAbsent(forcedExits, ignored -> new HashSet<>()).add(playerId);
+        }
+        byPoints.computeIfAbsent(PackedPlayerState.points(packed), ignored -> new HashSet<>()).add(playerId);
+    }
+
+    private void remove(UUID playerId, long packed) {
+        if (PackedPlayerState.canOffWork(packed)) {
+            offWork.remove(playerId);
+        }
+        int forcedExits = PackedPlayerState.forcedExitCount(packed);
+        if (forcedExits > 0) {
+            removeFrom(byForcedExits, forcedExits, playerId);
+        }
+        removeFrom(byPoints, PackedPlayerState.points(packed), playerId);
+    }
+
+    private static void removeFrom(NavigableMap<Integer, Set<UUID>> index, int key, UUID playerId) {
+        Set<UUID> players = index.get(key);
+        if (players != null && players.remove(playerId) && players.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static Collection<UUID> collect(NavigableMap<Integer, Set<UUID>> range) {
+        List<UUID> matches = new ArrayList<>();
+        for (Set<UUID> players : range.values()) {
+            matches.addAll(players);
+        }
+        return matches;
+    }
+}
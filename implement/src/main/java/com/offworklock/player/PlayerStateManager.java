@@ -1,119 +1,1986 @@
 package com.offworklock.player;
 
+import com.offworklock.config.ConfigData;
+
+import java.io.Closeable;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.LongUnaryOperator;
+import java.util.function.UnaryOperator;
 
 /**
  * Handles loading and storing per-player state for a specific world or multiplayer server.
+ * <p>
+ * In {@link ConfigData.PersistenceMode#IMMEDIATE} mode every update is written before the call
+ * returns. In {@link ConfigData.PersistenceMode#WRITE_BEHIND} mode updates only touch memory and
+ * mark the player dirty; a background flusher writes dirty contexts on a fixed interval and
+ * {@link #close()} writes whatever is left. In {@link ConfigData.PersistenceMode#GROUP_COMMIT} mode
+ * an update returns only once it is on disk and fsynced, but all updates arriving within
+ * {@link ConfigData#getGroupCommitWindowMillis()} share one flush and one fsync. In
+ * {@link ConfigData.PersistenceMode#TICK} mode updates only mark the player dirty and
+ * {@link #flushOnTick()}, called by the platform every server tick, writes dirty contexts within
+ * {@link ConfigData#getTickFlushBudgetMillis()}. Background writes that fail are retried later and
+ * counted, see {@link #getBackgroundFailureCount()}.
+ * <p>
+ * The mode is the default for every update. Individual updates may ask for a different
+ * {@link ConfigData.Durability}, e.g. an fsync for a change that must never be lost, or none for
+ * one that can wait for the next background flush.
+ * <p>
+ * Reading and writing is delegated to a {@link StateStore}, picked from
+ * {@link ConfigData#getStorageBackend()} unless one is passed in. Stores that accept partial
+ * writes only receive the players changed since the last flush.
+ * <p>
+ * Concurrency is per context: reads and snapshots go straight to a columnar
+ * {@link PlayerStateTable} without locking, updates take a short per-context lock, and disk
+ * writes for a context are serialized on that context's own I/O lock. Work on one context never waits for
+ * another, and the first access to a context loads it exactly once even when several threads race.
+ * <p>
+ * With {@link ConfigData#isSharedStorage()} several server processes may use the same directory: a
+ * context changed by another process is reloaded on the next update, or on the next read once
+ * {@link ConfigData#getSharedStorageCheckMillis()} has passed. An update keeps the other processes
+ * out of the context until it is written, so it is written before it returns in every persistence
+ * mode, and concurrent updates of one player from several processes all take effect.
+ * <p>
+ * At most {@link ConfigData#getMaxLoadedContexts()} contexts stay in memory. Loading one more
+ * flushes and unloads the least recently used context; it is read back from disk on next access.
+ * <p>
+ * Every change stamps the player's last-seen time. With {@link ConfigData#getRetentionDays()} set,
+ * a background job removes players not seen for longer from their context: players holding
+ * nothing are dropped, the rest are moved to the store's archive and restored transparently the
+ * next time they are accessed.
+ * <p>
+ * {@link #resetOffWorkUnlocks(String)} revokes every unlock in a context in constant time, by
+ * moving the context's reset epoch; with {@link ConfigData#getOffWorkResetTime()} set, every
+ * context is reset daily at that time.
+ * <p>
+ * A {@link ReplicationPrimary} attached to the manager receives every change as it is written and
+ * ships it to a {@link ReplicationStandby}, which applies it to the standby's own manager.
  */
-public final class PlayerStateManager {
+public final class PlayerStateManager implements Closeable {
 
-    private final Path storageDirectory;
-    private final Map<String, Map<UUID, PlayerState>> cache = new HashMap<>();
+    private final StateStore store;
+    private final ConfigData.PersistenceMode persistenceMode;
+    private final int maxLoadedContexts;
+    private final int groupCommitWindowMillis;
+    private final long externalCheckIntervalNanos;
+    private final boolean durableWrites;
+    private final long retentionSeconds;
+    private final long backupBytesPerSecond;
+    private final LocalTime offWorkResetTime;
+    private final ConcurrentHashMap<String, CompletableFuture<LoadedContext>> contexts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService background;
+    private final TickFlushScheduler tickScheduler;
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder cacheEvictions = new LongAdder();
+    private final LongAdder backgroundFailures = new LongAdder();
+    private volatile IOException lastBackgroundFailure;
+    /** The single-player updates run by {@link #updateContext}, created once rather than per call. */
+    private final ContextUpdate<UnaryOperator<PlayerState>, PlayerState> applyTransform = this::applyLocked;
+    private final ContextUpdate<LongUnaryOperator, PlayerState> applyPackedTransform = this::applyPackedLocked;
+    private final Object commitLock = new Object();
+    private final Object backupLock = new Object();
+    /** Held shared while a context loads and exclusively while a backup takes its snapshots. */
+    private final ReentrantReadWriteLock loadGate = new ReentrantReadWriteLock();
+    private volatile BackupCapture activeBackup;
+    private volatile ReplicationPrimary replication;
+    /**
+     * Set while a {@link ReplicationStandby} feeds this manager; scheduled resets and retention
+     * are left to the primary.
+     */
+    private volatile boolean standby;
+    private CompletableFuture<Void> pendingCommit;
 
     public PlayerStateManager(Path storageDirectory) throws IOException {
-        Objects.requireNonNull(storageDirectory, "storageDirectory");
-        this.storageDirectory = storageDirectory;
-        Files.createDirectories(storageDirectory);
+        this(storageDirectory, ConfigData.builder().build());
+    }
+
+    public PlayerStateManager(Path storageDirectory, ConfigData config) throws IOException {
+        this(StateStore.create(storageDirectory, config), config);
+    }
+
+    /**
+     * Creates a manager on top of a caller-supplied store, ignoring the configured backend. The
+     * manager takes ownership of the store and closes it in {@link #close()}.
+     */
+    public PlayerStateManager(StateStore store, ConfigData config) {
+        Objects.requireNonNull(store, "store");
+        Objects.requireNonNull(config, "config");
+        this.store = store;
+        store.setBackgroundFailureHandler(this::recordBackgroundFailure);
+        this.persistenceMode = config.getPersistenceMode();
+        this.maxLoadedContexts = config.getMaxLoadedContexts();
+        this.groupCommitWindowMillis = config.getGroupCommitWindowMillis();
+        this.externalCheckIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getSharedStorageCheckMillis());
+        this.durableWrites = persistenceMode == ConfigData.PersistenceMode.GROUP_COMMIT;
+        this.retentionSeconds = TimeUnit.DAYS.toSeconds(config.getRetentionDays());
+        this.backupBytesPerSecond = config.getBackupMaxKilobytesPerSecond() * 1024L;
+        this.offWorkResetTime = config.getOffWorkResetTime();
+
+        this.background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "OffWorkLock-StateFlusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (persistenceMode != ConfigData.PersistenceMode.TICK) {
+            // Also needed outside WRITE_BEHIND, for updates made with Durability.ASYNC.
+            long interval = config.getFlushIntervalSeconds();
+            background.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.SECONDS);
+        }
+        if (retentionSeconds > 0) {
+            long interval = config.getRetentionCheckMinutes();
+            background.scheduleWithFixedDelay(this::retireQuietly, interval, interval, TimeUnit.MINUTES);
+        }
+        scheduleOffWorkReset();
+        this.tickScheduler = persistenceMode == ConfigData.PersistenceMode.TICK
+                ? new TickFlushScheduler(this, config.getTickFlushBudgetMillis(), config.getTickFlushMaxBackoffTicks())
+                : null;
+    }
+
+    /**
+     * Resolves a context id once, so that later calls naming the context skip sanitizing the id
+     * and looking the context up. Resolve when a world loads and pass the handle to every call.
+     */
+    public ContextHandle resolveContext(String contextId) {
+        return new ContextHandle(this, contextId);
     }
 
-    public synchronized PlayerState getOrCreateState(String contextId, UUID playerId) throws IOException {
-        Map<UUID, PlayerState> contextStates = loadContext(contextId);
-        return contextStates.computeIfAbsent(playerId, ignored -> new PlayerState(0, false));
+    public PlayerState getOrCreateState(String contextId, UUID playerId) throws IOException {
+        return getOrCreateState(resolveContext(contextId), playerId);
     }
 
-    public synchronized void updateState(String contextId, UUID playerId, PlayerState newState) throws IOException {
+    public PlayerState getOrCreateState(ContextHandle handle, UUID playerId) throws IOException {
+        PlayerState state = loadContext(handle).states.get(playerId);
+        if (state != null) {
+            return state;
+        }
+        LoadedContext context = lockContext(handle);
+        try {
+            state = context.states.get(playerId);
+            if (state == null) {
+                state = restoreLocked(context, playerId);
+            }
+            if (state == null) {
+                state = PlayerState.fromPacked(PackedPlayerState.EMPTY, stampTime(context));
+                context.put(playerId, state);
+            }
+            return state;
+        } finally {
+            context.lock.unlock();
+        }
+    }
+
+    public void updateState(String contextId, UUID playerId, PlayerState newState) throws IOException {
+        updateState(resolveContext(contextId), playerId, newState);
+    }
+
+    public void updateState(ContextHandle handle, UUID playerId, PlayerState newState) throws IOException {
         Objects.requireNonNull(newState, "newState");
-        Map<UUID, PlayerState> contextStates = loadContext(contextId);
-        contextStates.put(playerId, newState);
-        saveContext(contextId, contextStates);
+        update(handle, playerId, ignored -> newState);
+    }
+
+    /**
+     * Atomically reads, transforms and stores a player's state.
+     * <p>
+     * The transform receives the current state (a fresh zero state for unknown players) and runs
+     * while the context is locked, so concurrent updates of the same context are applied one after
+     * another and none is lost. Keep it short and free of I/O. Returning an equal state skips the
+     * write.
+     *
+     * @return the state stored after the transform
+     */
+    public PlayerState update(String contextId, UUID playerId, UnaryOperator<PlayerState> transform) throws IOException {
+        return update(resolveContext(contextId), playerId, transform);
+    }
+
+    public PlayerState update(ContextHandle handle, UUID playerId, UnaryOperator<PlayerState> transform) throws IOException {
+        return update(handle, playerId, transform, ConfigData.Durability.DEFAULT);
+    }
+
+    /**
+     * Like {@link #update(ContextHandle, UUID, UnaryOperator)}, but returns only once the change
+     * is as durable as {@code durability} demands, regardless of the persistence mode. Other
+     * pending changes of the context are written along with it.
+     */
+    public PlayerState update(ContextHandle handle,
+                              UUID playerId,
+                              UnaryOperator<PlayerState> transform,
+                              ConfigData.Durability durability) throws IOException {
+        Objects.requireNonNull(playerId, "playerId");
+        Objects.requireNonNull(transform, "transform");
+        Objects.requireNonNull(durability, "durability");
+        PlayerState updated = updateContext(handle, durability, playerId, transform, applyTransform);
+        awaitDurability(durability);
+        return updated;
+    }
+
+    /**
+     * Like {@link #update}, but the transform works on the {@link PackedPlayerState} encoding. A
+     * player who already has a row is changed in the table's columns directly, so the only
+     * {@link PlayerState} created is the returned one; other players go through {@link #update}.
+     *
+     * @return the state stored after the transform
+     */
+    public PlayerState updatePacked(String contextId, UUID playerId, LongUnaryOperator transform) throws IOException {
+        return updatePacked(resolveContext(contextId), playerId, transform);
+    }
+
+    public PlayerState updatePacked(ContextHandle handle, UUID playerId, LongUnaryOperator transform) throws IOException {
+        return updatePacked(handle, playerId, transform, ConfigData.Durability.DEFAULT);
     }
 
-    public synchronized Optional<PlayerState> findState(String contextId, UUID playerId) throws IOException {
-        Map<UUID, PlayerState> contextStates = loadContext(contextId);
-        return Optional.ofNullable(contextStates.get(playerId));
+    public PlayerState updatePacked(ContextHandle handle,
+                                    UUID playerId,
+                                    LongUnaryOperator transform,
+                                    ConfigData.Durability durability) throws IOException {
+        Objects.requireNonNull(playerId, "playerId");
+        Objects.requireNonNull(transform, "transform");
+        Objects.requireNonNull(durability, "durability");
+        PlayerState updated = updateContext(handle, durability, playerId, transform, applyPackedTransform);
+        awaitDurability(durability);
+        return updated;
     }
 
-    public synchronized Map<UUID, PlayerState> snapshotContext(String contextId) throws IOException {
-        return Collections.unmodifiableMap(new LinkedHashMap<>(loadContext(contextId)));
+    /**
+     * Applies every change in the batch. Each affected context is locked once for all of its
+     * changes and written at most once afterwards.
+     * <p>
+     * A batch is atomic per context but not across contexts. The changes of one context are run
+     * against each other's results and stored only once all of them succeeded, so a transform that
+     * throws leaves its context as it was; contexts are applied one after another, and those
+     * applied before the failing one keep their changes and are written as usual.
+     *
+     * @return number of players whose state changed
+     */
+    public int applyBatch(StateBatch batch) throws IOException {
+        return applyBatch(batch, ConfigData.Durability.DEFAULT);
     }
 
-    private Map<UUID, PlayerState> loadContext(String contextId) throws IOException {
-        String safeContext = sanitizeContextId(contextId);
-        Map<UUID, PlayerState> contextStates = cache.get(safeContext);
-        if (contextStates != null) {
-            return contextStates;
+    /**
+     * Like {@link #applyBatch(StateBatch)}, with the durability of {@link #update(ContextHandle,
+     * UUID, UnaryOperator, ConfigData.Durability)} for the whole batch.
+     */
+    public int applyBatch(StateBatch batch, ConfigData.Durability durability) throws IOException {
+        Objects.requireNonNull(batch, "batch");
+        Objects.requireNonNull(durability, "durability");
+        Map<String, List<StateBatch.Operation>> byContext = new LinkedHashMap<>();
+        for (StateBatch.Operation operation : batch.operations()) {
+            ContextHandle handle = operation.handle != null ? operation.handle : resolveContext(operation.contextId);
+            byContext.computeIfAbsent(handle.safeContextId(), ignored -> new ArrayList<>())
+                    .add(operation.withHandle(handle));
         }
-        Path file = storageDirectory.resolve(safeContext + ".dat");
-        Map<UUID, PlayerState> loaded = new LinkedHashMap<>();
-        if (Files.exists(file)) {
-            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
-                String trimmed = line.trim();
-                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
-                    continue;
+
+        int changed = 0;
+        for (List<StateBatch.Operation> group : byContext.values()) {
+            changed += updateContext(group.get(0).handle, durability, null, group,
+                    (context, ignored, operations) -> applyGroupLocked(context, operations));
+        }
+        awaitDurability(durability);
+        return changed;
+    }
+
+    public Optional<PlayerState> findState(String contextId, UUID playerId) throws IOException {
+        return findState(resolveContext(contextId), playerId);
+    }
+
+    public Optional<PlayerState> findState(ContextHandle handle, UUID playerId) throws IOException {
+        PlayerState state = loadContext(handle).states.get(playerId);
+        if (state != null || !store.supportsArchive()) {
+            return Optional.ofNullable(state);
+        }
+        LoadedContext context = lockContext(handle);
+        try {
+            state = context.states.get(playerId);
+            return Optional.ofNullable(state != null ? state : restoreLocked(context, playerId));
+        } finally {
+            context.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns an immutable point-in-time view of a context in constant time. The view shares the
+     * live columns until the next update copies them, so taking one never blocks writers, and
+     * later updates never show up in it.
+     */
+    public Map<UUID, PlayerState> snapshotContext(String contextId) throws IOException {
+        return snapshotContext(resolveContext(contextId));
+    }
+
+    public Map<UUID, PlayerState> snapshotContext(ContextHandle handle) throws IOException {
+        return loadContext(handle).states.snapshot();
+    }
+
+    /**
+     * Passes every player of a context to {@code visitor}, reading a point-in-time snapshot
+     * column by column. Meant for leaderboards and statistics over whole contexts; no per-player
+     * objects are created.
+     */
+    public void forEachState(String contextId, PlayerStateVisitor visitor) throws IOException {
+        forEachState(resolveContext(contextId), visitor);
+    }
+
+    public void forEachState(ContextHandle handle, PlayerStateVisitor visitor) throws IOException {
+        Objects.requireNonNull(visitor, "visitor");
+        loadContext(handle).states.snapshot().forEach(visitor);
+    }
+
+    /**
+     * Returns the players of a context who currently have off-work unlocked.
+     *
+     * @see #findByPoints(ContextHandle, int, int)
+     */
+    public Map<UUID, PlayerState> findOffWorkUnlocked(String contextId) throws IOException {
+        return findOffWorkUnlocked(resolveContext(contextId));
+    }
+
+    public Map<UUID, PlayerState> findOffWorkUnlocked(ContextHandle handle) throws IOException {
+        return query(handle, PlayerStateIndex::offWorkUnlocked);
+    }
+
+    /**
+     * Returns the players of a context with at least {@code minForcedExits} forced exits. Values
+     * below 1 count as 1, as players who never had a forced exit are not indexed.
+     *
+     * @see #findByPoints(ContextHandle, int, int)
+     */
+    public Map<UUID, PlayerState> findByForcedExits(String contextId, int minForcedExits) throws IOException {
+        return findByForcedExits(resolveContext(contextId), minForcedExits);
+    }
+
+    public Map<UUID, PlayerState> findByForcedExits(ContextHandle handle, int minForcedExits) throws IOException {
+        return query(handle, index -> index.forcedExitsAtLeast(minForcedExits));
+    }
+
+    public Map<UUID, PlayerState> findByPoints(String contextId, int minPoints, int maxPoints) throws IOException {
+        return findByPoints(resolveContext(contextId), minPoints, maxPoints);
+    }
+
+    /**
+     * Returns the players of a context whose points lie between {@code minPoints} and
+     * {@code maxPoints}, both inclusive.
+     * <p>
+     * Lookups go through secondary indexes that are built on the first lookup in a loaded context
+     * and then updated along with every change, so they take time proportional to the number of
+     * matches; contexts that are never queried pay nothing. Archived players are not included.
+     */
+    public Map<UUID, PlayerState> findByPoints(ContextHandle handle, int minPoints, int maxPoints) throws IOException {
+        return query(handle, index -> index.pointsBetween(minPoints, maxPoints));
+    }
+
+    /**
+     * Converts stored contexts still kept as legacy text snapshots into the store's own format,
+     * streaming them instead of loading them whole; see {@link LegacyStateConverter}. Contexts
+     * that are already loaded are skipped. Meant to run at startup, before the first access.
+     *
+     * @return number of contexts converted
+     */
+    public int migrateLegacyContexts(int concurrency) throws IOException {
+        List<String> contextIds = new ArrayList<>(store.listContexts());
+        contextIds.removeAll(contexts.keySet());
+        return new LegacyStateConverter(store).convert(contextIds, concurrency);
+    }
+
+    /**
+     * Loads every stored context into memory ahead of first access, reading up to
+     * {@code concurrency} contexts at once on virtual threads. No more contexts than the cache
+     * bound are loaded. A context that fails to load is skipped and retried on first access.
+     *
+     * @return number of contexts loaded
+     * @throws IOException if listing the stored contexts fails, or with the first load failure
+     *                     (others suppressed) once all loads have finished
+     */
+    public int preloadContexts(int concurrency) throws IOException {
+        List<String> contextIds = new ArrayList<>(store.listContexts());
+        if (maxLoadedContexts > 0 && contextIds.size() > maxLoadedContexts) {
+            contextIds = contextIds.subList(0, maxLoadedContexts);
+        }
+        Semaphore permits = new Semaphore(Math.max(1, concurrency));
+        List<Future<LoadedContext>> loads = new ArrayList<>(contextIds.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String contextId : contextIds) {
+                loads.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return loadContext(resolveContext(contextId));
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        }
+
+        int loaded = 0;
+        IOException failure = null;
+        for (Future<LoadedContext> load : loads) {
+            try {
+                load.get();
+                loaded++;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while preloading player state", ex);
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                IOException io = cause instanceof IOException e ? e : new IOException("Failed to preload player state", cause);
+                if (failure == null) {
+                    failure = io;
+                } else {
+                    failure.addSuppressed(io);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return loaded;
+    }
+
+    /**
+     * Returns hit/miss/eviction counters of the context cache since startup.
+     */
+    public CacheStats getCacheStats() {
+        return new CacheStats(contexts.size(), cacheHits.sum(), cacheMisses.sum(), cacheEvictions.sum());
+    }
+
+    /**
+     * Returns how many times work that no caller waits for has failed since startup: periodic and
+     * tick flushes, flushes on eviction, retention passes, scheduled off-work resets, changes
+     * applied from a {@link ReplicationPrimary}, and work the store does in the background. Failed
+     * work is retried, so a count that keeps growing means changes are not getting to disk, e.g.
+     * because it is full.
+     *
+     * @see #getLastBackgroundFailure()
+     */
+    public long getBackgroundFailureCount() {
+        return backgroundFailures.sum();
+    }
+
+    /**
+     * Returns the most recent failure counted by {@link #getBackgroundFailureCount()}, for the
+     * platform to log.
+     */
+    public Optional<IOException> getLastBackgroundFailure() {
+        return Optional.ofNullable(lastBackgroundFailure);
+    }
+
+    /**
+     * Records a failure of work no caller waits for, which would otherwise go unnoticed.
+     */
+    void recordBackgroundFailure(IOException failure) {
+        lastBackgroundFailure = failure;
+        backgroundFailures.increment();
+    }
+
+    /**
+     * Writes every dirty context to disk. Safe to call from any thread.
+     */
+    public void flush() throws IOException {
+        flushAll(durableWrites);
+    }
+
+    /**
+     * Should be called by the platform once per server tick, on the server thread. In
+     * {@link ConfigData.PersistenceMode#TICK} mode this writes dirty contexts until the tick budget
+     * is spent; in every other mode it does nothing. Write failures leave the context dirty for a
+     * later tick and are counted in {@link #getBackgroundFailureCount()}.
+     *
+     * @return number of contexts written during this tick
+     */
+    public int flushOnTick() {
+        return tickScheduler != null ? tickScheduler.tick() : 0;
+    }
+
+    /**
+     * Returns the ids of loaded contexts that have unwritten changes.
+     */
+    List<String> dirtyContextIds() {
+        List<String> dirty = new ArrayList<>();
+        for (CompletableFuture<LoadedContext> future : contexts.values()) {
+            LoadedContext context = future.getNow(null);
+            if (context == null) {
+                continue;
+            }
+            context.lock.lock();
+            try {
+                if (!context.dirty.isEmpty()) {
+                    dirty.add(context.safeContext);
+                }
+            } finally {
+                context.lock.unlock();
+            }
+        }
+        return dirty;
+    }
+
+    /**
+     * Writes one loaded context if it is still loaded and dirty.
+     *
+     * @return whether anything was written
+     */
+    boolean flushLoadedContext(String safeContext) throws IOException {
+        CompletableFuture<LoadedContext> future = contexts.get(safeContext);
+        LoadedContext context = future != null ? future.getNow(null) : null;
+        return context != null && flushContext(context, durableWrites);
+    }
+
+    private void flushAll(boolean force) throws IOException {
+        IOException failure = null;
+        for (CompletableFuture<LoadedContext> future : contexts.values()) {
+            LoadedContext context = future.getNow(null);
+            if (context == null) {
+                continue;
+            }
+            try {
+                flushContext(context, force);
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                } else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Like {@link #backup(Path, long)}, at the rate of
+     * {@link ConfigData#getBackupMaxKilobytesPerSecond()}.
+     */
+    public BackupResult backup(Path target) throws IOException {
+        return backup(target, backupBytesPerSecond);
+    }
+
+    /**
+     * Writes a point-in-time copy of every context to {@code target} while updates go on.
+     * <p>
+     * All loaded contexts are copied as of one instant: they are locked together only for as long
+     * as it takes to snapshot each, which is constant time. A context that is not loaded cannot
+     * change until it is, so it is copied when something loads it, or else read from the store by
+     * the backup without caching it; resetting the off-work unlocks of a stored context copies it
+     * first. The copy is written in the {@link TextStateStore} format, one {@code <context>.dat}
+     * per context, into the directory {@code target} or, if its name ends in {@code .zip}, into a
+     * zip archive. To restore it, copy the files, or unzip the archive, into an empty player data
+     * directory and start the server with {@code migrateLegacyOnStart}, which converts them into
+     * the configured backend through {@link #migrateLegacyContexts}. Only one backup runs at a time.
+     * <p>
+     * Archived players are included but fall outside the point in time: each context's archive is
+     * read when the backup writes that context. Retention only changes archived players the captured
+     * context still holds, and the context's copy wins, so no player goes missing; a player
+     * retired, restored and retired again meanwhile is copied with its newer state.
+     *
+     * @param maxBytesPerSecond average write rate limit; 0 or less for none
+     */
+    public BackupResult backup(Path target, long maxBytesPerSecond) throws IOException {
+        Objects.requireNonNull(target, "target");
+        synchronized (backupLock) {
+            long start = System.nanoTime();
+            Set<String> contextIds = new TreeSet<>(store.listContexts());
+            BackupCapture backup = new BackupCapture();
+            try (BackupWriter writer = BackupWriter.open(target, maxBytesPerSecond)) {
+                contextIds.addAll(captureLoadedContexts(backup));
+                int players = 0;
+                for (String contextId : contextIds) {
+                    Map<UUID, PlayerState> snapshot = backup.snapshots.remove(contextId);
+                    if (snapshot == null) {
+                        snapshot = captureStoredContext(backup, contextId);
+                    }
+                    writer.writeContext(contextId, snapshot, store);
+                    players += snapshot.size();
+                }
+                long bytes = writer.finish();
+                return new BackupResult(contextIds.size(), players, bytes, System.nanoTime() - start);
+            } finally {
+                activeBackup = null;
+            }
+        }
+    }
+
+    /**
+     * Snapshots every loaded context while holding all their locks, and starts capturing contexts
+     * as they are loaded. Loads are held off meanwhile, so each context is either snapshotted here
+     * or loaded afterwards.
+     *
+     * @return ids of the contexts that were loaded
+     */
+    private List<String> captureLoadedContexts(BackupCapture backup) {
+        loadGate.writeLock().lock();
+        try {
+            activeBackup = backup;
+            List<LoadedContext> loaded = new ArrayList<>(contexts.size());
+            for (CompletableFuture<LoadedContext> future : contexts.values()) {
+                LoadedContext context = future.getNow(null);
+                if (context != null) {
+                    loaded.add(context);
+                }
+            }
+            List<String> contextIds = new ArrayList<>(loaded.size());
+            int locked = 0;
+            try {
+                for (LoadedContext context : loaded) {
+                    context.lock.lock();
+                    locked++;
+                }
+                for (LoadedContext context : loaded) {
+                    // An evicted context was written out in full and is captured when reloaded.
+                    if (!context.evicted) {
+                        backup.snapshots.put(context.safeContext, context.states.snapshot());
+                    }
+                    contextIds.add(context.safeContext);
+                }
+            } finally {
+                for (int i = 0; i < locked; i++) {
+                    loaded.get(i).lock.unlock();
+                }
+            }
+            return contextIds;
+        } finally {
+            loadGate.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copies a context that was not loaded when the backup started straight from the store,
+     * without caching it. The context is claimed in the cache under the load gate and read
+     * outside it, so loads of other contexts go on meanwhile; a context that has been loaded
+     * since was captured by that load and is taken from there.
+     */
+    private Map<UUID, PlayerState> captureStoredContext(BackupCapture backup, String safeContext) throws IOException {
+        while (true) {
+            CompletableFuture<LoadedContext> claim = new CompletableFuture<>();
+            CompletableFuture<LoadedContext> cached;
+            loadGate.writeLock().lock();
+            try {
+                Map<UUID, PlayerState> captured = backup.snapshots.remove(safeContext);
+                if (captured != null) {
+                    return captured;
+                }
+                cached = contexts.putIfAbsent(safeContext, claim);
+            } finally {
+                loadGate.writeLock().unlock();
+            }
+            if (cached == null) {
+                try {
+                    return readStoredSnapshot(safeContext);
+                } finally {
+                    dropClaim(safeContext, claim);
+                }
+            }
+            // Loading, which captures the context, or claimed by someone else; checked again once done.
+            try {
+                awaitContext(cached);
+            } catch (IOException ex) {
+                if (!cached.isCompletedExceptionally()) {
+                    throw ex;
+                }
+                // The load failed and was forgotten; the next round reads the context itself.
+            }
+        }
+    }
+
+    synchronized void attachReplication(ReplicationPrimary primary) {
+        if (replication != null) {
+            throw new IllegalStateException("A replication primary is already attached");
+        }
+        replication = primary;
+    }
+
+    synchronized void detachReplication(ReplicationPrimary primary) {
+        if (replication == primary) {
+            replication = null;
+        }
+    }
+
+    /**
+     * Copies every stored or loaded context, with its archive, to a standby that just connected.
+     * A loaded context is snapshot under its I/O lock, so the copy falls between two of its flushes,
+     * and the primary holds back the context's later changes until the copy is queued; any other
+     * context is read from the store without entering the cache. The copy itself is queued after
+     * the lock is released, so flushes never wait for the standby. Stops once the connection is
+     * gone.
+     */
+    void replicateAll(ReplicationPrimary primary, int generation) throws IOException {
+        Set<String> contextIds = new TreeSet<>(store.listContexts());
+        contextIds.addAll(contexts.keySet());
+        for (String contextId : contextIds) {
+            while (true) {
+                if (!primary.isCurrent(generation)) {
+                    return;
+                }
+                CompletableFuture<LoadedContext> claim = new CompletableFuture<>();
+                CompletableFuture<LoadedContext> cached = contexts.putIfAbsent(contextId, claim);
+                Map<UUID, PlayerState> snapshot;
+                long resetEpoch;
+                if (cached == null) {
+                    PlayerStateTable stored = readStoredContext(primary, generation, contextId, claim);
+                    if (stored == null) {
+                        return;
+                    }
+                    snapshot = stored.snapshot();
+                    resetEpoch = stored.getResetEpoch();
+                } else {
+                    LoadedContext context = awaitContext(cached);
+                    synchronized (context.ioLock) {
+                        // Unloaded meanwhile; copied from the store on the next round.
+                        if (context.evicted) {
+                            continue;
+                        }
+                        if (!primary.holdChanges(generation, contextId)) {
+                            return;
+                        }
+                        snapshot = context.states.snapshot();
+                        resetEpoch = context.states.getResetEpoch();
+                    }
+                }
+                if (!shipContext(primary, generation, contextId, snapshot, resetEpoch)) {
+                    return;
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Reads a context that is not loaded straight from the store, holding its cache entry
+     * meanwhile so that it cannot be loaded and changed, but without caching it.
+     *
+     * @return the context's players, or {@code null} if the connection is gone
+     */
+    private PlayerStateTable readStoredContext(ReplicationPrimary primary,
+                                               int generation,
+                                               String safeContext,
+                                               CompletableFuture<LoadedContext> claim) throws IOException {
+        LoadedContext context;
+        try {
+            context = new LoadedContext(safeContext, store.load(safeContext), store.loadResetEpoch(safeContext));
+        } catch (IOException | RuntimeException ex) {
+            contexts.remove(safeContext, claim);
+            claim.completeExceptionally(ex);
+            throw ex;
+        }
+        try {
+            return primary.holdChanges(generation, safeContext) ? context.states : null;
+        } finally {
+            context.lock.lock();
+            try {
+                // Never cached; anyone waiting on the claim sees it evicted and loads the context.
+                context.evicted = true;
+            } finally {
+                context.lock.unlock();
+            }
+            // Released before the waiting loads wake, so that they keep what they read.
+            try {
+                store.release(safeContext);
+            } finally {
+                contexts.remove(safeContext, claim);
+                claim.complete(context);
+            }
+        }
+    }
+
+    /**
+     * Queues the copy of a context whose later changes the primary holds back, then lets them
+     * follow it. Runs without any lock of the context, as it waits for the standby.
+     */
+    private boolean shipContext(ReplicationPrimary primary,
+                                int generation,
+                                String safeContext,
+                                Map<UUID, PlayerState> states,
+                                long resetEpoch) throws IOException {
+        try {
+            if (resetEpoch > 0L && !primary.shipSyncResetEpoch(generation, safeContext, resetEpoch)) {
+                return false;
+            }
+            if (!primary.shipSync(generation, ReplicationProtocol.CONTEXT, safeContext, states)) {
+                return false;
+            }
+            return !store.supportsArchive() || primary.shipSyncArchive(generation, safeContext, store);
+        } finally {
+            primary.releaseChanges(generation, safeContext);
+        }
+    }
+
+    /**
+     * Applies players shipped by a primary and writes them straight away, so the standby's store
+     * trails the primary's by no more than the stream does. With {@code replace}, players of the
+     * context missing from {@code records} are removed.
+     *
+     * @param records new states; {@code null} values are removed players
+     */
+    void applyReplicated(String contextId, Map<UUID, PlayerState> records, boolean replace) throws IOException {
+        LoadedContext context = lockContext(resolveContext(contextId));
+        try {
+            if (replace) {
+                for (UUID playerId : context.states.snapshot().keySet()) {
+                    if (!records.containsKey(playerId)) {
+                        context.remove(playerId);
+                        context.dirty.add(playerId);
+                    }
+                }
+            }
+            for (Map.Entry<UUID, PlayerState> entry : records.entrySet()) {
+                PlayerState current = context.states.get(entry.getKey());
+                if (entry.getValue() == null) {
+                    if (current != null) {
+                        context.remove(entry.getKey());
+                        context.dirty.add(entry.getKey());
+                    }
+                } else if (!sameRecord(entry.getValue(), current)) {
+                    context.put(entry.getKey(), entry.getValue());
+                    context.dirty.add(entry.getKey());
+                }
+            }
+        } finally {
+            context.lock.unlock();
+        }
+        flushContext(context, durableWrites);
+    }
+
+    /**
+     * Applies a reset epoch shipped by a primary. Epochs only move forward, so the order in which
+     * it arrives relative to the players' changes does not matter.
+     */
+    void applyReplicatedResetEpoch(String contextId, long resetEpoch) throws IOException {
+        if (!store.supportsResetEpoch()) {
+            return;
+        }
+        LoadedContext context = lockContext(resolveContext(contextId));
+        try {
+            applyResetEpochLocked(context, resetEpoch);
+        } finally {
+            context.lock.unlock();
+        }
+    }
+
+    void setStandby(boolean standby) {
+        this.standby = standby;
+    }
+
+    /**
+     * Applies archive changes shipped by a primary; ignored if this store has no archive.
+     */
+    void applyReplicatedArchive(String contextId, Map<UUID, PlayerState> changes) throws IOException {
+        if (store.supportsArchive()) {
+            store.archive(sanitizeContextId(contextId), changes);
+        }
+    }
+
+    /**
+     * Stops background persistence work and writes all pending changes.
+     */
+    @Override
+    public void close() throws IOException {
+        background.shutdown();
+        try {
+            background.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flushAll(true);
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * Writes a context just updated if the update asked for it to be written before returning,
+     * by {@code durability} or, for {@link ConfigData.Durability#DEFAULT}, by the persistence
+     * mode. Group commits are waited for afterwards, by {@link #awaitDurability}.
+     */
+    private void writeAfterUpdate(LoadedContext context, ConfigData.Durability durability) throws IOException {
+        switch (durability) {
+            case SYNC -> flushContext(context, true);
+            case GROUP_COMMIT, ASYNC -> {
+                // Written by the group commit, the periodic flusher or the tick scheduler.
+            }
+            case DEFAULT -> {
+                if (persistenceMode == ConfigData.PersistenceMode.IMMEDIATE) {
+                    flushContext(context, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the group commit that makes freshly applied updates durable, if {@code durability}
+     * or the persistence mode asks for one; every other durability was already met by
+     * {@link #writeAfterUpdate}.
+     */
+    private void awaitDurability(ConfigData.Durability durability) throws IOException {
+        if (durability == ConfigData.Durability.GROUP_COMMIT
+                || (durability == ConfigData.Durability.DEFAULT && persistenceMode == ConfigData.PersistenceMode.GROUP_COMMIT)) {
+            awaitGroupCommit();
+        }
+    }
+
+    /**
+     * Joins the currently open commit group, opening one if needed, and waits until it is on disk.
+     * The group is flushed once its window expires; because an update is marked dirty before it
+     * joins, the flush that completes the group always includes it.
+     */
+    private void awaitGroupCommit() throws IOException {
+        CompletableFuture<Void> commit;
+        synchronized (commitLock) {
+            if (pendingCommit == null) {
+                if (background.isShutdown()) {
+                    flushAll(true);
+                    return;
+                }
+                pendingCommit = new CompletableFuture<>();
+                background.schedule(this::runGroupCommit, groupCommitWindowMillis, TimeUnit.MILLISECONDS);
+            }
+            commit = pendingCommit;
+        }
+        try {
+            commit.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for group commit", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw cause instanceof IOException io ? io : new IOException("Group commit failed", cause);
+        }
+    }
+
+    private void runGroupCommit() {
+        CompletableFuture<Void> commit;
+        synchronized (commitLock) {
+            commit = pendingCommit;
+            pendingCommit = null;
+        }
+        try {
+            flushAll(true);
+            commit.complete(null);
+        } catch (IOException | RuntimeException ex) {
+            commit.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * Revokes the off-work unlock of every player in a context, e.g. when a new work day starts.
+     * <p>
+     * Takes constant time however many players the context holds: only a reset epoch is stored,
+     * and from then on every unlock granted before it reads as revoked. Each stored player is
+     * corrected the next time it is written, an archived one when it is restored. Stores without
+     * reset epochs are corrected right away instead, one unlocked player at a time.
+     */
+    public void resetOffWorkUnlocks(String contextId) throws IOException {
+        resetOffWorkUnlocks(resolveContext(contextId));
+    }
+
+    public void resetOffWorkUnlocks(ContextHandle handle) throws IOException {
+        LoadedContext context = lockContext(handle);
+        if (!store.supportsResetEpoch()) {
+            try {
+                for (UUID playerId : new ArrayList<>(context.index().offWorkUnlocked())) {
+                    applyLocked(context, playerId, state -> state.withOffWork(false));
+                }
+            } finally {
+                context.lock.unlock();
+            }
+            writeAfterUpdate(context, ConfigData.Durability.DEFAULT);
+            awaitDurability(ConfigData.Durability.DEFAULT);
+            return;
+        }
+        long resetEpoch;
+        try {
+            // One past every last-seen time stamped so far, so that all earlier unlocks fall before it.
+            resetEpoch = Math.max(epochSecondNow(), context.states.getResetEpoch()) + 1L;
+            applyResetEpochLocked(context, resetEpoch);
+        } finally {
+            context.lock.unlock();
+        }
+        ReplicationPrimary replica = replication;
+        if (replica != null) {
+            replica.shipResetEpoch(context.safeContext, resetEpoch);
+        }
+    }
+
+    /**
+     * Applies {@link #resetOffWorkUnlocks(String)} to every stored or loaded context; run daily at
+     * {@link ConfigData#getOffWorkResetTime()} when configured. Contexts that are not loaded only
+     * get their stored epoch moved, without being read unless a running backup still needs them.
+     *
+     * @return number of contexts reset
+     */
+    public int resetAllOffWorkUnlocks() throws IOException {
+        Set<String> contextIds = new LinkedHashSet<>(store.listContexts());
+        contextIds.addAll(contexts.keySet());
+        int reset = 0;
+        IOException failure = null;
+        for (String contextId : contextIds) {
+            try {
+                ContextHandle handle = resolveContext(contextId);
+                if (!resetStoredOffWorkUnlocks(handle.safeContextId())) {
+                    resetOffWorkUnlocks(handle);
+                }
+                reset++;
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                } else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return reset;
+    }
+
+    /**
+     * Moves the reset epoch of a context that is not loaded in the store alone. The context is
+     * claimed in the cache meanwhile, so the next load waits and reads the new epoch.
+     *
+     * @return {@code false} if the context is loaded or claimed, or the store keeps no epochs, in
+     *         which case it has to be reset through the cache
+     */
+    private boolean resetStoredOffWorkUnlocks(String safeContext) throws IOException {
+        if (!store.supportsResetEpoch()) {
+            return false;
+        }
+        CompletableFuture<LoadedContext> claim = new CompletableFuture<>();
+        if (contexts.putIfAbsent(safeContext, claim) != null) {
+            return false;
+        }
+        long resetEpoch;
+        try {
+            // Shared, so only a backup starting meanwhile waits for the reset.
+            loadGate.readLock().lock();
+            try {
+                BackupCapture backup = activeBackup;
+                if (backup != null && !backup.snapshots.containsKey(safeContext)) {
+                    // The running backup copies the context as it was before the reset.
+                    backup.snapshots.putIfAbsent(safeContext, readStoredSnapshot(safeContext));
+                }
+                // Every last-seen time stamped in the context is at most the current time or its epoch.
+                resetEpoch = Math.max(epochSecondNow(), store.loadResetEpoch(safeContext)) + 1L;
+                store.writeResetEpoch(safeContext, resetEpoch);
+            } finally {
+                loadGate.readLock().unlock();
+            }
+        } finally {
+            dropClaim(safeContext, claim);
+        }
+        ReplicationPrimary replica = replication;
+        if (replica != null) {
+            replica.shipResetEpoch(safeContext, resetEpoch);
+        }
+        return true;
+    }
+
+    /**
+     * Stores the epoch before publishing it, so a failed write revokes nothing. The caller holds
+     * the context lock, which orders the reset against every change stamped around it.
+     */
+    private void applyResetEpochLocked(LoadedContext context, long resetEpoch) throws IOException {
+        if (resetEpoch <= context.states.getResetEpoch()) {
+            return;
+        }
+        store.writeResetEpoch(context.safeContext, resetEpoch);
+        context.states.setResetEpoch(resetEpoch);
+        if (context.index != null) {
+            context.index.applyResetEpoch(context.states);
+        }
+    }
+
+    private void scheduleOffWorkReset() {
+        if (offWorkResetTime == null || background.isShutdown()) {
+            return;
+        }
+        ZonedDateTime now = ZonedDateTime.now();
+        ZonedDateTime next = now.with(offWorkResetTime);
+        if (!next.isAfter(now)) {
+            next = now.plusDays(1).with(offWorkResetTime);
+        }
+        background.schedule(this::resetQuietly, Duration.between(now, next).toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void resetQuietly() {
+        try {
+            if (!standby) {
+                resetAllOffWorkUnlocks();
+            }
+        } catch (IOException ex) {
+            // Contexts that failed keep their unlocks until the next reset.
+            recordBackgroundFailure(ex);
+        } finally {
+            scheduleOffWorkReset();
+        }
+    }
+
+    /**
+     * Retires players whose last-seen time is older than {@link ConfigData#getRetentionDays()}
+     * from every stored or loaded context. Players with an open session are kept. Players stored
+     * before last-seen times were recorded have none; they are stamped with the current time, so
+     * their retention period starts now. Contexts that are not loaded are read without entering
+     * the cache. Does nothing if retention is disabled.
+     */
+    public RetentionResult retireInactivePlayers() throws IOException {
+        if (retentionSeconds <= 0) {
+            return new RetentionResult(0, 0);
+        }
+        long now = epochSecondNow();
+        Set<String> contextIds = new LinkedHashSet<>(store.listContexts());
+        contextIds.addAll(contexts.keySet());
+        int archived = 0;
+        int dropped = 0;
+        IOException failure = null;
+        for (String contextId : contextIds) {
+            try {
+                RetentionResult result = retireStoredContext(resolveContext(contextId), now, now - retentionSeconds);
+                archived += result.archived;
+                dropped += result.dropped;
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                } else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return new RetentionResult(archived, dropped);
+    }
+
+    /**
+     * Retires players of a loaded context in place. Any other context is claimed in the cache so
+     * that loads of it wait, read from the store and retired, then dropped again, which keeps a
+     * retention pass from evicting the contexts in use. The waiting loads find it evicted and
+     * read the result from the store.
+     */
+    private RetentionResult retireStoredContext(ContextHandle handle, long now, long cutoff) throws IOException {
+        String safeContext = handle.safeContextId();
+        CompletableFuture<LoadedContext> claim = new CompletableFuture<>();
+        if (contexts.putIfAbsent(safeContext, claim) != null) {
+            return retireContext(loadContext(handle), now, cutoff);
+        }
+        LoadedContext context;
+        loadGate.readLock().lock();
+        try {
+            context = readContext(safeContext);
+        } catch (IOException | RuntimeException ex) {
+            contexts.remove(safeContext, claim);
+            claim.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loadGate.readLock().unlock();
+        }
+        try {
+            return retireContext(context, now, cutoff);
+        } finally {
+            synchronized (context.ioLock) {
+                context.lock.lock();
+                try {
+                    // Nothing may flush this copy later; a failed write is retried by the next pass.
+                    context.evicted = true;
+                    context.dirty.clear();
+                    context.unforced.clear();
+                } finally {
+                    context.lock.unlock();
+                }
+                // Released before the waiting loads wake, so that they keep what they read.
+                try {
+                    store.release(safeContext);
+                } finally {
+                    contexts.remove(safeContext, claim);
+                    claim.complete(context);
                 }
-                String[] parts = trimmed.split(",");
-                if (parts.length < 3) {
+            }
+        }
+    }
+
+    /**
+     * Archives first and only then removes the players from the context, so a crash in between
+     * leaves a player in both places rather than in neither; the copy in the context wins. Holds
+     * the I/O lock throughout, which keeps the context from being evicted meanwhile.
+     */
+    private RetentionResult retireContext(LoadedContext context, long now, long cutoff) throws IOException {
+        synchronized (context.ioLock) {
+            Map<UUID, PlayerState> expired = new LinkedHashMap<>();
+            List<UUID> unstamped = new ArrayList<>();
+            for (Map.Entry<UUID, PlayerState> entry : context.states.snapshot().entrySet()) {
+                PlayerState state = entry.getValue();
+                if (state.isSessionOpen()) {
                     continue;
                 }
+                if (state.getLastSeen() == 0L) {
+                    unstamped.add(entry.getKey());
+                } else if (state.getLastSeen() < cutoff) {
+                    expired.put(entry.getKey(), state);
+                }
+            }
+            // A null value drops the player, also from the archive should an older copy be there.
+            Map<UUID, PlayerState> retired = new LinkedHashMap<>();
+            for (Map.Entry<UUID, PlayerState> entry : expired.entrySet()) {
+                if (entry.getValue().toPacked() == PackedPlayerState.EMPTY) {
+                    retired.put(entry.getKey(), null);
+                } else if (store.supportsArchive()) {
+                    retired.put(entry.getKey(), entry.getValue());
+                }
+            }
+            if (unstamped.isEmpty() && retired.isEmpty()) {
+                return new RetentionResult(0, 0);
+            }
+            if (store.supportsArchive() && !retired.isEmpty()) {
+                store.archive(context.safeContext, retired);
+                ReplicationPrimary replica = replication;
+                if (replica != null) {
+                    replica.shipArchive(context.safeContext, retired);
+                }
+            }
+
+            int archived = 0;
+            int dropped = 0;
+            context.lock.lock();
+            try {
+                if (context.evicted) {
+                    return new RetentionResult(0, 0);
+                }
+                for (UUID playerId : unstamped) {
+                    PlayerState current = context.states.get(playerId);
+                    if (current != null && current.getLastSeen() == 0L) {
+                        context.put(playerId, current.withLastSeen(now));
+                        context.dirty.add(playerId);
+                    }
+                }
+                for (Map.Entry<UUID, PlayerState> entry : retired.entrySet()) {
+                    // Players updated since the scan are kept.
+                    if (sameRecord(expired.get(entry.getKey()), context.states.get(entry.getKey()))) {
+                        context.remove(entry.getKey());
+                        context.dirty.add(entry.getKey());
+                        if (entry.getValue() != null) {
+                            archived++;
+                        } else {
+                            dropped++;
+                        }
+                    }
+                }
+            } finally {
+                context.lock.unlock();
+            }
+            flushContext(context, durableWrites);
+            return new RetentionResult(archived, dropped);
+        }
+    }
+
+    private void retireQuietly() {
+        try {
+            // A standby gets retention shipped by its primary, like resets.
+            if (!standby) {
+                retireInactivePlayers();
+            }
+        } catch (IOException ex) {
+            // Retried on the next interval.
+            recordBackgroundFailure(ex);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException ex) {
+            // Failed contexts stay dirty and are retried on the next interval.
+            recordBackgroundFailure(ex);
+        }
+    }
+
+    /**
+     * Takes the pending data under the context lock and writes it outside of it, so readers and
+     * updaters are not blocked by disk I/O. Writes of one context are serialized by its I/O lock.
+     */
+    private boolean flushContext(LoadedContext context, boolean force) throws IOException {
+        synchronized (context.ioLock) {
+            Set<UUID> changed;
+            Map<UUID, PlayerState> records;
+            context.lock.lock();
+            try {
+                boolean catchUp = force && !context.unforced.isEmpty();
+                if (context.dirty.isEmpty() && !catchUp) {
+                    return false;
+                }
+                changed = context.dirty;
+                context.dirty = new LinkedHashSet<>();
+                // An unforced flush may have taken changes a durable update is waiting for, so a
+                // forced one writes them again with force. On a shared store updates that need
+                // force were already written with it under the update lock, and this process's
+                // copy of the others may be older than another process's write, so they are left.
+                if (catchUp && !store.isShared()) {
+                    changed.addAll(context.unforced);
+                }
+                // A snapshot makes the next write copy every column, so stores that only take the
+                // changed players get just those rows copied instead.
+                if (store.requiresFullContext()) {
+                    records = context.states.snapshot();
+                } else {
+                    records = new LinkedHashMap<>(Math.max(16, changed.size() * 2));
+                    for (UUID playerId : changed) {
+                        records.put(playerId, context.states.get(playerId));
+                    }
+                }
+            } finally {
+                context.lock.unlock();
+            }
+            try {
+                store.write(context.safeContext, records, Collections.unmodifiableSet(changed), force);
+                if (force) {
+                    context.unforced.clear();
+                } else {
+                    context.unforced.addAll(changed);
+                }
+                ReplicationPrimary replica = replication;
+                if (replica != null) {
+                    replica.shipChanges(context.safeContext, changed, records);
+                }
+            } catch (IOException ex) {
+                context.lock.lock();
                 try {
-                    UUID playerId = UUID.fromString(parts[0].trim());
-                    int points = Integer.parseInt(parts[1].trim());
-                    boolean canOffWork = Boolean.parseBoolean(parts[2].trim());
-                    boolean sessionOpen = parts.length > 3 && Boolean.parseBoolean(parts[3].trim());
-                    int forcedExitCount = 0;
-                    if (parts.length > 4) {
-                        try {
-                            forcedExitCount = Integer.parseInt(parts[4].trim());
-                        } catch (NumberFormatException ignored) {
-                            forcedExitCount = 0;
+                    context.dirty.addAll(changed);
+                } finally {
+                    context.lock.unlock();
+                }
+                throw ex;
+            }
+            return true;
+        }
+    }
+
+    private Map<UUID, PlayerState> query(ContextHandle handle, Function<PlayerStateIndex, Collection<UUID>> lookup)
+            throws IOException {
+        LoadedContext context = lockContext(handle);
+        try {
+            Collection<UUID> playerIds = lookup.apply(context.index());
+            Map<UUID, PlayerState> matches = new LinkedHashMap<>(Math.max(16, playerIds.size() * 2));
+            for (UUID playerId : playerIds) {
+                matches.put(playerId, context.states.get(playerId));
+            }
+            return Collections.unmodifiableMap(matches);
+        } finally {
+            context.lock.unlock();
+        }
+    }
+
+    /**
+     * Transforms one player's state; the caller holds the context lock. Returns the current
+     * instance unchanged when the transform produced an equal state, and for an unknown player
+     * the empty state without storing it. A changed state is stamped with the current time as the
+     * player's last-seen time.
+     */
+    private PlayerState applyLocked(LoadedContext context, UUID playerId, UnaryOperator<PlayerState> transform)
+            throws IOException {
+        PlayerState base = currentLocked(context, playerId);
+        return storeLocked(context, playerId, base, Objects.requireNonNull(transform.apply(base), "transform result"));
+    }
+
+    /**
+     * Applies the changes of one context from a batch; the caller holds the context lock. Every
+     * transform runs before anything is stored, so one that throws stores nothing. Players
+     * restored from the archive meanwhile stay restored, which changes none of their states.
+     *
+     * @return number of players whose state changed
+     */
+    private int applyGroupLocked(LoadedContext context, List<StateBatch.Operation> operations) throws IOException {
+        Map<UUID, PlayerState> bases = new LinkedHashMap<>();
+        Map<UUID, PlayerState> staged = new LinkedHashMap<>();
+        for (StateBatch.Operation operation : operations) {
+            PlayerState state = staged.get(operation.playerId);
+            if (state == null) {
+                state = currentLocked(context, operation.playerId);
+                bases.put(operation.playerId, state);
+            }
+            staged.put(operation.playerId, Objects.requireNonNull(operation.transform.apply(state), "transform result"));
+        }
+        int changed = 0;
+        for (Map.Entry<UUID, PlayerState> entry : staged.entrySet()) {
+            PlayerState base = bases.get(entry.getKey());
+            if (storeLocked(context, entry.getKey(), base, entry.getValue()) != base) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Returns a player's state for a transform to start from, restoring it from the archive if
+     * needed, or the empty state for an unknown player; the caller holds the context lock.
+     */
+    private PlayerState currentLocked(LoadedContext context, UUID playerId) throws IOException {
+        PlayerState current = context.states.get(playerId);
+        if (current == null) {
+            current = restoreLocked(context, playerId);
+        }
+        return current != null ? current : PlayerState.fromPacked(PackedPlayerState.EMPTY);
+    }
+
+    /**
+     * Stores the result of a transform of {@code base}, stamped, unless it equals {@code base}, in
+     * which case {@code base} itself is returned; the caller holds the context lock.
+     */
+    private PlayerState storeLocked(LoadedContext context, UUID playerId, PlayerState base, PlayerState updated) {
+        if (updated.equals(base)) {
+            return base;
+        }
+        updated = updated.withLastSeen(stampTime(context));
+        context.put(playerId, updated);
+        context.dirty.add(playerId);
+        return updated;
+    }
+
+    /**
+     * Packed counterpart of {@link #applyLocked}; the caller holds the context lock. A player with
+     * a row is changed in place, creating only the returned state.
+     */
+    private PlayerState applyPackedLocked(LoadedContext context, UUID playerId, LongUnaryOperator transform)
+            throws IOException {
+        int row = context.states.rowOf(playerId);
+        if (row < 0) {
+            return applyLocked(context, playerId, state -> state.withPacked(transform.applyAsLong(state.toPacked())));
+        }
+        long current = context.states.packedAt(row);
+        long updated = transform.applyAsLong(current);
+        if (updated == current) {
+            return context.states.get(playerId);
+        }
+        long lastSeen = stampTime(context);
+        if (context.index != null) {
+            context.index.update(playerId, current, updated);
+        }
+        context.states.setPacked(row, updated, lastSeen);
+        context.dirty.add(playerId);
+        return PlayerState.fromPacked(updated, lastSeen);
+    }
+
+    /**
+     * Moves an archived player back into the loaded context; the caller holds the context lock.
+     *
+     * @return the restored state, or {@code null} if the player is not archived
+     */
+    private PlayerState restoreLocked(LoadedContext context, UUID playerId) throws IOException {
+        if (!store.supportsArchive()) {
+            return null;
+        }
+        PlayerState archived = store.loadArchived(context.safeContext, playerId);
+        if (archived == null) {
+            return null;
+        }
+        PlayerState restored = context.states.reconcile(archived).withLastSeen(stampTime(context));
+        context.put(playerId, restored);
+        context.dirty.add(playerId);
+        return restored;
+    }
+
+    /**
+     * Runs {@code update} with the context locked, then writes the context if {@code durability}
+     * asks for it; see {@link #writeAfterUpdate}. On a {@linkplain StateStore#isShared() shared}
+     * store the store's update lock is held from the check for external changes until the changes
+     * are written, so no other process can write the context in between and lose them; such
+     * updates are therefore written before they return, whatever the persistence mode. The context
+     * lock is taken before the update lock here as everywhere else.
+     */
+    private <A, T> T updateContext(ContextHandle handle,
+                                   ConfigData.Durability durability,
+                                   UUID playerId,
+                                   A argument,
+                                   ContextUpdate<A, T> update) throws IOException {
+        if (!store.isShared()) {
+            LoadedContext context = lockContext(handle);
+            T result;
+            try {
+                result = update.apply(context, playerId, argument);
+            } finally {
+                context.lock.unlock();
+            }
+            writeAfterUpdate(context, durability);
+            return result;
+        }
+        boolean force = switch (durability) {
+            case SYNC, GROUP_COMMIT -> true;
+            case ASYNC -> false;
+            case DEFAULT -> durableWrites;
+        };
+        while (true) {
+            LoadedContext context = loadCached(handle);
+            synchronized (context.ioLock) {
+                context.lock.lock();
+                try {
+                    if (context.evicted) {
+                        continue;
+                    }
+                    Closeable updateLock = store.lockForUpdate(context.safeContext);
+                    try {
+                        if (!store.isModifiedExternally(context.safeContext)) {
+                            T result = update.apply(context, playerId, argument);
+                            flushContext(context, force);
+                            return result;
                         }
+                    } finally {
+                        updateLock.close();
                     }
-                    loaded.put(playerId, new PlayerState(points, canOffWork, sessionOpen, forcedExitCount));
-                } catch (IllegalArgumentException ex) {
-                    // Skip malformed entries.
+                } finally {
+                    context.lock.unlock();
                 }
             }
+            // Reloaded outside the locks, so loading never waits while holding them.
+            unload(context);
         }
-        cache.put(safeContext, loaded);
-        return loaded;
     }
 
-    private void saveContext(String contextId, Map<UUID, PlayerState> states) throws IOException {
-        String safeContext = sanitizeContextId(contextId);
-        Path file = storageDirectory.resolve(safeContext + ".dat");
-        StringBuilder builder = new StringBuilder();
-        builder.append("# Player state for context ").append(contextId).append('\n');
-        for (Map.Entry<UUID, PlayerState> entry : states.entrySet()) {
-            PlayerState state = entry.getValue();
-            builder.append(entry.getKey())
-                    .append(',')
-                    .append(state.getPoints())
-                    .append(',')
-                    .append(state.canOffWork())
-                    .append(',')
-                    .append(state.isSessionOpen())
-                    .append(',')
-                    .append(state.getForcedExitCount())
-                    .append('\n');
-        }
-        Files.writeString(file, builder.toString(), StandardCharsets.UTF_8);
-    }
-
-    private String sanitizeContextId(String contextId) {
+    /**
+     * Returns the context with its lock held, retrying if it was evicted while the lock was awaited.
+     */
+    private LoadedContext lockContext(ContextHandle handle) throws IOException {
+        while (true) {
+            LoadedContext context = loadCached(handle);
+            if (refreshIfStale(context, true)) {
+                continue;
+            }
+            context.lock.lock();
+            if (!context.evicted) {
+                return context;
+            }
+            context.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the loaded context like {@link #loadCached}, first reloading it if another process
+     * changed it.
+     */
+    private LoadedContext loadContext(ContextHandle handle) throws IOException {
+        LoadedContext context = loadCached(handle);
+        while (refreshIfStale(context, false)) {
+            context = loadCached(handle);
+        }
+        return context;
+    }
+
+    /**
+     * Unloads a context whose stored copy was changed by someone else, after writing this
+     * process's own pending changes into it. Reads check at most every
+     * {@link ConfigData#getSharedStorageCheckMillis()}; updates check every time, so they always
+     * apply to the latest stored state.
+     *
+     * @return whether the context was unloaded and has to be fetched again
+     */
+    private boolean refreshIfStale(LoadedContext context, boolean always) throws IOException {
+        long now = System.nanoTime();
+        if (!always && now - context.lastExternalCheck < externalCheckIntervalNanos) {
+            return false;
+        }
+        context.lastExternalCheck = now;
+        return store.isModifiedExternally(context.safeContext) && unload(context);
+    }
+
+    /**
+     * Returns the loaded context, reading it from disk on first access. Concurrent first accesses
+     * share a single load; a failed load is forgotten so the next access retries it, and one that
+     * finds the context unloaded, or claimed without being loaded, loads it again. The context
+     * is remembered in the handle, so later accesses through it skip the cache lookup until the
+     * context is unloaded.
+     */
+    private LoadedContext loadCached(ContextHandle handle) throws IOException {
+        if (handle.owner() != this) {
+            throw new IllegalArgumentException("Context handle was resolved by another PlayerStateManager: " + handle);
+        }
+        LoadedContext context = handle.loaded;
+        if (context == null || context.evicted) {
+            context = loadCached(handle.safeContextId());
+            handle.loaded = context;
+        } else {
+            cacheHits.increment();
+            context.lastAccess = System.nanoTime();
+        }
+        return context;
+    }
+
+    private LoadedContext loadCached(String safeContext) throws IOException {
+        while (true) {
+            CompletableFuture<LoadedContext> future = contexts.get(safeContext);
+            if (future == null) {
+                CompletableFuture<LoadedContext> created = new CompletableFuture<>();
+                future = contexts.putIfAbsent(safeContext, created);
+                if (future == null) {
+                    cacheMisses.increment();
+                    future = created;
+                    loadGate.readLock().lock();
+                    try {
+                        created.complete(readContext(safeContext));
+                    } catch (IOException | RuntimeException ex) {
+                        contexts.remove(safeContext, created);
+                        created.completeExceptionally(ex);
+                    } finally {
+                        loadGate.readLock().unlock();
+                    }
+                    scheduleEviction();
+                } else {
+                    cacheHits.increment();
+                }
+            } else {
+                cacheHits.increment();
+            }
+            LoadedContext context = future.getNow(null);
+            if (context == null) {
+                context = awaitContext(future);
+            }
+            // Unloaded, or a claim given up without loading, whose table may be empty; the entry
+            // is gone by now, so the next round loads the context.
+            if (!context.evicted) {
+                context.lastAccess = System.nanoTime();
+                return context;
+            }
+        }
+    }
+
+    private void scheduleEviction() {
+        if (maxLoadedContexts <= 0 || contexts.size() <= maxLoadedContexts) {
+            return;
+        }
+        if (!background.isShutdown()) {
+            background.execute(this::evictQuietly);
+        } else {
+            evictQuietly();
+        }
+    }
+
+    private void evictQuietly() {
+        try {
+            evictLeastRecentlyUsed();
+        } catch (IOException ex) {
+            // The context stays loaded and dirty; eviction is retried on the next load.
+            recordBackgroundFailure(ex);
+        }
+    }
+
+    /**
+     * Unloads least recently used contexts until the cache fits its bound. A context is flushed
+     * first and only dropped if no update slipped in afterwards, so nothing unsaved is discarded.
+     */
+    private void evictLeastRecentlyUsed() throws IOException {
+        while (contexts.size() > maxLoadedContexts) {
+            LoadedContext victim = null;
+            for (CompletableFuture<LoadedContext> future : contexts.values()) {
+                LoadedContext candidate = future.getNow(null);
+                if (candidate != null && (victim == null || candidate.lastAccess < victim.lastAccess)) {
+                    victim = candidate;
+                }
+            }
+            if (victim == null || !unload(victim)) {
+                return;
+            }
+            cacheEvictions.increment();
+        }
+    }
+
+    /**
+     * Flushes a context and drops it from the cache, unless an update slipped in after the flush.
+     *
+     * @return whether the context was dropped
+     */
+    private boolean unload(LoadedContext context) throws IOException {
+        synchronized (context.ioLock) {
+            // Durable updates may still wait on writes this context made unforced; once it is
+            // unloaded they can no longer be forced through it.
+            flushContext(context, durableWrites || !context.unforced.isEmpty());
+            context.lock.lock();
+            try {
+                if (context.evicted || !context.dirty.isEmpty()) {
+                    return context.evicted;
+                }
+                context.evicted = true;
+                // Released before the entry goes, so that a load that follows keeps what it reads.
+                try {
+                    store.release(context.safeContext);
+                } finally {
+                    contexts.remove(context.safeContext);
+                }
+            } finally {
+                context.lock.unlock();
+            }
+            return true;
+        }
+    }
+
+    private LoadedContext awaitContext(CompletableFuture<LoadedContext> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for player state to load", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Failed to load player state", cause);
+        }
+    }
+
+    /**
+     * Reads a context from the store. A context loaded while a backup runs has not changed since
+     * the backup started, so the backup takes it as it is loaded if it has no copy yet.
+     */
+    private LoadedContext readContext(String safeContext) throws IOException {
+        LoadedContext context = new LoadedContext(safeContext, store.load(safeContext), store.loadResetEpoch(safeContext));
+        BackupCapture backup = activeBackup;
+        if (backup != null) {
+            backup.snapshots.putIfAbsent(safeContext, context.states.snapshot());
+        }
+        return context;
+    }
+
+    /**
+     * Reads a context as a load would see it, reset epoch applied, without caching it, and
+     * releases whatever the store opened for it. The caller holds the context's cache entry, so no
+     * load can change the context meanwhile.
+     */
+    private Map<UUID, PlayerState> readStoredSnapshot(String safeContext) throws IOException {
+        try {
+            return new LoadedContext(safeContext, store.load(safeContext), store.loadResetEpoch(safeContext)).states.snapshot();
+        } finally {
+            store.release(safeContext);
+        }
+    }
+
+    /**
+     * Gives up a cache entry claimed without loading the context. Anyone waiting on it sees an
+     * evicted context and loads the context itself.
+     */
+    private void dropClaim(String safeContext, CompletableFuture<LoadedContext> claim) {
+        LoadedContext placeholder = new LoadedContext(safeContext, Map.of(), 0L);
+        placeholder.evicted = true;
+        contexts.remove(safeContext, claim);
+        claim.complete(placeholder);
+    }
+
+    private static long epochSecondNow() {
+        return System.currentTimeMillis() / 1000L;
+    }
+
+    /**
+     * Whether two states are the same stored record, including the last-seen time that
+     * {@link PlayerState#equals} leaves out.
+     */
+    private static boolean sameRecord(PlayerState a, PlayerState b) {
+        return a == null ? b == null : a.equals(b) && a.getLastSeen() == b.getLastSeen();
+    }
+
+    /**
+     * Returns the last-seen time to stamp on a change: the current time, but never before the
+     * context's reset epoch, so that an unlock granted after a reset is not revoked by it.
+     */
+    private static long stampTime(LoadedContext context) {
+        return Math.max(epochSecondNow(), context.states.getResetEpoch());
+    }
+
+    static String sanitizeContextId(String contextId) {
         String value = contextId == null ? "default" : contextId.trim();
         if (value.isEmpty()) {
             value = "default";
         }
         return value.replaceAll("[^a-zA-Z0-9-_]", "_");
     }
+
+    /**
+     * A change run by {@link #updateContext} under the context lock, given its arguments
+     * explicitly so that an instance can be reused across calls.
+     */
+    @FunctionalInterface
+    private interface ContextUpdate<A, T> {
+        T apply(LoadedContext context, UUID playerId, A argument) throws IOException;
+    }
+
+    /**
+     * In-memory state of one context. {@link #states} may be read and snapshotted without locking;
+     * every write to it goes through {@link #put} and {@link #remove}, which keep {@link #index} in
+     * step, and every change of {@link #dirty} and {@link #evicted} happens under {@link #lock}.
+     * {@link #ioLock} serializes disk writes.
+     */
+    static final class LoadedContext {
+        final String safeContext;
+        final PlayerStateTable states;
+        final ReentrantLock lock = new ReentrantLock();
+        final Object ioLock = new Object();
+        Set<UUID> dirty = new LinkedHashSet<>();
+        /** Players written since the last forced write; guarded by {@link #ioLock}. */
+        final Set<UUID> unforced = new HashSet<>();
+        /** Built on the first query; {@code null} until then. */
+        PlayerStateIndex index;
+        volatile boolean evicted;
+        volatile long lastAccess = System.nanoTime();
+        volatile long lastExternalCheck = System.nanoTime();
+
+        LoadedContext(String safeContext, Map<UUID, PlayerState> loaded, long resetEpoch) {
+            this.safeContext = safeContext;
+            this.states = PlayerStateTable.copyOf(loaded);
+            states.setResetEpoch(resetEpoch);
+        }
+
+        /**
+         * Sets a player's state; the caller holds {@link #lock}.
+         */
+        void put(UUID playerId, PlayerState state) {
+            if (index != null) {
+                // The index holds rows as get() reports them, reset epoch applied.
+                index.update(playerId, states.get(playerId), states.reconcile(state));
+            }
+            states.put(playerId, state);
+        }
+
+        /**
+         * Removes a player's row; the caller holds {@link #lock}.
+         */
+        void remove(UUID playerId) {
+            if (index != null) {
+                index.update(playerId, states.get(playerId), null);
+            }
+            states.remove(playerId);
+        }
+
+        /**
+         * Returns the indexes, building them on first use; the caller holds {@link #lock}.
+         */
+        PlayerStateIndex index() {
+            if (index == null) {
+                index = PlayerStateIndex.build(states.snapshot());
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Point-in-time counters of the context cache.
+     */
+    public static final class CacheStats {
+        private final int loadedContexts;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        private CacheStats(int loadedContexts, long hits, long misses, long evictions) {
+            this.loadedContexts = loadedContexts;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public int getLoadedContexts() {
+            return loadedContexts;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+    }
+
+    /**
+     * Context snapshots collected by a running backup.
+     */
+    private static final class BackupCapture {
+        final Map<String, Map<UUID, PlayerState>> snapshots = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Outcome of {@link #backup(Path, long)}.
+     */
+    public static final class BackupResult {
+        private final int contexts;
+        private final int players;
+        private final long bytes;
+        private final long elapsedNanos;
+
+        private BackupResult(int contexts, int players, long bytes, long elapsedNanos) {
+            this.contexts = contexts;
+            this.players = players;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getContexts() {
+            return contexts;
+        }
+
+        /**
+         * Players copied from the contexts themselves, not counting archived players.
+         */
+        public int getPlayers() {
+            return players;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+
+    /**
+     * Outcome of {@link #retireInactivePlayers()}.
+     */
+    public static final class RetentionResult {
+        private final int archived;
+        private final int dropped;
+
+        private RetentionResult(int archived, int dropped) {
+            this.archived = archived;
+            this.dropped = dropped;
+        }
+
+        /**
+         * Players moved to the archive.
+         */
+        public int getArchived() {
+            return archived;
+        }
+
+        /**
+         * Players removed for good because they held nothing worth keeping.
+         */
+        public int getDropped() {
+            return dropped;
+        }
+    }
 }
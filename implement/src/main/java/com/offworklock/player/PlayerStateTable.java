@@ -0,0 +1,458 @@
+package com.offworklock.player;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Column-oriented player state storage for one loaded context.
+ * <p>
+ * Each player is a row in parallel columns: the two halves of the UUID and the
+ * {@link PackedPlayerState} encoding of the state as {@code long}s, and the last-seen epoch second
+ * as an unsigned {@code int}; about 28 bytes per player plus an open-addressing {@code int[]}
+ * index (linear probing, at most half full) that maps UUIDs to rows. There are no per-player
+ * objects, and a scan walks the columns sequentially. Removing a player moves the last row into
+ * its place.
+ * <p>
+ * Reads use optimistic {@link StampedLock} stamps and normally take no lock at all. Writes take the
+ * write lock; callers additionally serialize writes of a context among themselves.
+ * {@link #snapshot()} is constant-time: it shares the current columns and marks them read-only, and
+ * the next write copies them before changing anything.
+ * <p>
+ * An off-work unlock is only valid if it was granted at or after the table's reset epoch: every
+ * read, including snapshots, reports players last seen before it as locked. Revoking all unlocks
+ * therefore only moves the epoch; the stored rows are corrected as players are next written.
+ */
+final class PlayerStateTable {
+
+    private static final int MIN_ROWS = 8;
+
+    private final StampedLock lock = new StampedLock();
+    private long[] mostBits;
+    private long[] leastBits;
+    private long[] states;
+    private int[] lastSeen;
+    /** Row + 1 per slot; 0 marks an empty slot. Length is a power of two. */
+    private int[] index;
+    private int size;
+    /** Epoch second, unsigned like {@link #lastSeen}; 0 revokes nothing. */
+    private int resetEpoch;
+    private volatile boolean shared;
+
+    PlayerStateTable(int expectedRows) {
+        int rows = Math.max(MIN_ROWS, expectedRows);
+        this.mostBits = new long[rows];
+        this.leastBits = new long[rows];
+        this.states = new long[rows];
+        this.lastSeen = new int[rows];
+        this.index = new int[indexCapacity(rows)];
+    }
+
+    static PlayerStateTable copyOf(Map<UUID, PlayerState> source) {
+        PlayerStateTable table = new PlayerStateTable(source.size());
+        for (Map.Entry<UUID, PlayerState> entry : source.entrySet()) {
+            table.putUnlocked(entry.getKey(), entry.getValue());
+        }
+        return table;
+    }
+
+    /**
+     * Returns the player's state, or {@code null} if the player has no row.
+     */
+    PlayerState get(UUID playerId) {
+        long most = playerId.getMostSignificantBits();
+        long least = playerId.getLeastSignificantBits();
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            int[] currentIndex = index;
+            long[] currentMost = mostBits;
+            long[] currentLeast = leastBits;
+            long[] currentStates = states;
+            int[] currentLastSeen = lastSeen;
+            int currentResetEpoch = resetEpoch;
+            int row = find(currentIndex, currentMost, currentLeast, size, most, least);
+            boolean inRange = row >= 0 && row < currentStates.length && row < currentLastSeen.length;
+            long packed = inRange ? currentStates[row] : 0L;
+            int seen = inRange ? currentLastSeen[row] : 0;
+            if (lock.validate(stamp)) {
+                return row >= 0 ? state(packed, seen, currentResetEpoch) : null;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            int row = find(index, mostBits, leastBits, size, most, least);
+            return row >= 0 ? state(states[row], lastSeen[row], resetEpoch) : null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the player's row, or -1 if the player has none. Rows move only when a player is
+     * removed, so a row stays valid for as long as the caller keeps other writers out.
+     */
+    int rowOf(UUID playerId) {
+        long stamp = lock.readLock();
+        try {
+            return find(index, mostBits, leastBits, size,
+                    playerId.getMostSignificantBits(), playerId.getLeastSignificantBits());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the packed state of a row as {@link #get} reports it, with the reset epoch applied.
+     */
+    long packedAt(int row) {
+        long stamp = lock.readLock();
+        try {
+            return reconcile(states[row], lastSeen[row], resetEpoch);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Replaces the state of an existing row without creating a {@link PlayerState}.
+     */
+    void setPacked(int row, long packed, long lastSeen) {
+        long stamp = lock.writeLock();
+        try {
+            unshare();
+            states[row] = packed;
+            this.lastSeen[row] = (int) lastSeen;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Inserts or replaces a player's state.
+     */
+    void put(UUID playerId, PlayerState state) {
+        long stamp = lock.writeLock();
+        try {
+            putUnlocked(playerId, state);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes a player's row.
+     *
+     * @return whether the player had a row
+     */
+    boolean remove(UUID playerId) {
+        long stamp = lock.writeLock();
+        try {
+            return removeUnlocked(playerId.getMostSignificantBits(), playerId.getLeastSignificantBits());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns an immutable view of the current contents in constant time. The next write then
+     * copies every column, so callers that need only a few rows should {@link #get} them instead.
+     */
+    Snapshot snapshot() {
+        long stamp = lock.readLock();
+        try {
+            shared = true;
+            return new Snapshot(mostBits, leastBits, states, lastSeen, index, size, resetEpoch);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getResetEpoch() {
+        return Integer.toUnsignedLong(resetEpoch);
+    }
+
+    /**
+     * Revokes the off-work unlock of every player last seen before {@code resetEpoch}, in
+     * constant time. The epoch never moves back.
+     */
+    void setResetEpoch(long resetEpoch) {
+        long stamp = lock.writeLock();
+        try {
+            if (resetEpoch > getResetEpoch()) {
+                this.resetEpoch = (int) resetEpoch;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Applies the reset epoch to a state from outside the table, such as an archived one.
+     */
+    PlayerState reconcile(PlayerState state) {
+        long packed = reconcile(state.toPacked(), (int) state.getLastSeen(), resetEpoch);
+        return state.withPacked(packed);
+    }
+
+    /**
+     * Applies a reset epoch to a state kept outside any table, as a table with that epoch would.
+     */
+    static PlayerState reconcile(PlayerState state, long resetEpoch) {
+        long packed = reconcile(state.toPacked(), (int) state.getLastSeen(), (int) resetEpoch);
+        return state.withPacked(packed);
+    }
+
+    private void putUnlocked(UUID playerId, PlayerState state) {
+        unshare();
+        long most = playerId.getMostSignificantBits();
+        long least = playerId.getLeastSignificantBits();
+        int row = find(index, mostBits, leastBits, size, most, least);
+        if (row < 0) {
+            if (size == states.length) {
+                int rows = size * 2;
+                mostBits = Arrays.copyOf(mostBits, rows);
+                leastBits = Arrays.copyOf(leastBits, rows);
+                states = Arrays.copyOf(states, rows);
+                lastSeen = Arrays.copyOf(lastSeen, rows);
+            }
+            if ((size + 1) * 2 > index.length) {
+                index = rehash(indexCapacity(size + 1));
+            }
+            row = size;
+            mostBits[row] = most;
+            leastBits[row] = least;
+            insertSlot(index, most, least, row);
+            size = row + 1;
+        }
+        states[row] = state.toPacked();
+        lastSeen[row] = (int) state.getLastSeen();
+    }
+
+    /**
+     * Deletes the row's index slot with backward shifting, so probe chains stay unbroken without
+     * tombstones, then moves the last row into the freed row.
+     */
+    private boolean removeUnlocked(long most, long least) {
+        int mask = index.length - 1;
+        int slot = hash(most, least) & mask;
+        int row = -1;
+        while (index[slot] != 0) {
+            int candidate = index[slot] - 1;
+            if (mostBits[candidate] == most && leastBits[candidate] == least) {
+                row = candidate;
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (row < 0) {
+            return false;
+        }
+        unshare();
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (index[next] != 0) {
+            int entry = index[next] - 1;
+            int home = hash(mostBits[entry], leastBits[entry]) & mask;
+            // The entry may fill the hole unless its home slot lies cyclically in (hole, next].
+            boolean stays = hole <= next ? home > hole && home <= next : home > hole || home <= next;
+            if (!stays) {
+                index[hole] = index[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        index[hole] = 0;
+
+        int last = size - 1;
+        if (row != last) {
+            int lastSlot = hash(mostBits[last], leastBits[last]) & mask;
+            while (index[lastSlot] != last + 1) {
+                lastSlot = (lastSlot + 1) & mask;
+            }
+            index[lastSlot] = row + 1;
+            mostBits[row] = mostBits[last];
+            leastBits[row] = leastBits[last];
+            states[row] = states[last];
+            lastSeen[row] = lastSeen[last];
+        }
+        size = last;
+        return true;
+    }
+
+    /**
+     * Gives the table private copies of columns that a snapshot still references.
+     */
+    private void unshare() {
+        if (shared) {
+            mostBits = mostBits.clone();
+            leastBits = leastBits.clone();
+            states = states.clone();
+            lastSeen = lastSeen.clone();
+            index = index.clone();
+            shared = false;
+        }
+    }
+
+    private int[] rehash(int capacity) {
+        int[] rebuilt = new int[capacity];
+        for (int row = 0; row < size; row++) {
+            insertSlot(rebuilt, mostBits[row], leastBits[row], row);
+        }
+        return rebuilt;
+    }
+
+    private static void insertSlot(int[] index, long most, long least, int row) {
+        int mask = index.length - 1;
+        int slot = hash(most, least) & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = row + 1;
+    }
+
+    /**
+     * Probes for a row. Written defensively so that a torn optimistic read can produce a wrong
+     * answer (which the stamp validation then discards) but never an exception or endless loop.
+     */
+    private static int find(int[] index, long[] mostBits, long[] leastBits, int size, long most, long least) {
+        int mask = index.length - 1;
+        int slot = hash(most, least) & mask;
+        for (int probes = 0; probes < index.length; probes++) {
+            int entry = index[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            int row = entry - 1;
+            if (row < size && row < mostBits.length && row < leastBits.length
+                    && mostBits[row] == most && leastBits[row] == least) {
+                return row;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static PlayerState state(long packed, int lastSeen, int resetEpoch) {
+        return PlayerState.fromPacked(reconcile(packed, lastSeen, resetEpoch), Integer.toUnsignedLong(lastSeen));
+    }
+
+    private static long reconcile(long packed, int lastSeen, int resetEpoch) {
+        return Integer.compareUnsigned(lastSeen, resetEpoch) < 0 ? PackedPlayerState.withOffWork(packed, false) : packed;
+    }
+
+    private static int hash(long most, long least) {
+        long h = most * 0x9E3779B97F4A7C15L ^ least;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int indexCapacity(int rows) {
+        return Integer.highestOneBit(Math.max(MIN_ROWS, rows) * 2 - 1) << 1;
+    }
+
+    /**
+     * Frozen contents of a table. The columns it references are never written again.
+     */
+    static final class Snapshot extends AbstractMap<UUID, PlayerState> {
+        private final long[] mostBits;
+        private final long[] leastBits;
+        private final long[] states;
+        private final int[] lastSeen;
+        private final int[] index;
+        private final int size;
+        private final int resetEpoch;
+        private Set<Map.Entry<UUID, PlayerState>> entrySet;
+
+        private Snapshot(long[] mostBits, long[] leastBits, long[] states, int[] lastSeen, int[] index, int size,
+                         int resetEpoch) {
+            this.mostBits = mostBits;
+            this.leastBits = leastBits;
+            this.states = states;
+            this.lastSeen = lastSeen;
+            this.index = index;
+            this.size = size;
+            this.resetEpoch = resetEpoch;
+        }
+
+        /**
+         * Visits every player in row order without allocating.
+         */
+        void forEach(PlayerStateVisitor visitor) {
+            for (int row = 0; row < size; row++) {
+                visitor.visit(mostBits[row], leastBits[row], reconcile(states[row], lastSeen[row], resetEpoch));
+            }
+        }
+
+        @Override
+        public PlayerState get(Object key) {
+            if (!(key instanceof UUID playerId)) {
+                return null;
+            }
+            int row = find(index, mostBits, leastBits, size,
+                    playerId.getMostSignificantBits(), playerId.getLeastSignificantBits());
+            return row >= 0 ? state(row) : null;
+        }
+
+        private PlayerState state(int row) {
+            return PlayerStateTable.state(states[row], lastSeen[row], resetEpoch);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Set<Map.Entry<UUID, PlayerState>> entrySet() {
+            Set<Map.Entry<UUID, PlayerState>> entries = entrySet;
+            if (entries == null) {
+                entries = new AbstractSet<>() {
+                    @Override
+                    public Iterator<Map.Entry<UUID, PlayerState>> iterator() {
+                        return new Iterator<>() {
+                            private int row;
+
+                            @Override
+                            public boolean hasNext() {
+                                return row < size;
+                            }
+
+                            @Override
+                            public Map.Entry<UUID, PlayerState> next() {
+                                if (row >= size) {
+                                    throw new NoSuchElementException();
+                                }
+                                Map.Entry<UUID, PlayerState> entry = new AbstractMap.SimpleImmutableEntry<>(
+                                        new UUID(mostBits[row], leastBits[row]),
+                                        state(row));
+                                row++;
+                                return entry;
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+                };
+                entrySet = entries;
+            }
+            return entries;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.offworklock.player;
+
+/**
+ * Receives every player of a context during a bulk scan, see
+ * {@link PlayerStateManager#forEachState(String, PlayerStateVisitor)}. The player id is passed as
+ * its two halves and the state in its {@link PackedPlayerState} encoding, so scanning allocates
+ * nothing per player.
+ */
+@FunctionalInterface
+public interface PlayerStateVisitor {
+
+    void visit(long playerIdMost, long playerIdLeast, long packedState);
+}
@@ -0,0 +1,405 @@
+package com.offworklock.player;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ships every player state change written by a {@link PlayerStateManager} to a
+ * {@link ReplicationStandby} over TCP, so that the standby holds a warm copy to fail over to.
+ * <p>
+ * Each context flush hands the written players to a background sender, which streams them to the
+ * standby; retention moves into the archive and off-work resets are shipped the same way.
+ * Whenever a connection is made, the sender first copies every context and archive to the
+ * standby, while new changes keep streaming, so a standby that was down or restarted catches up
+ * on its own. If the standby falls too far behind, the connection is dropped and the copy starts
+ * over.
+ * <p>
+ * Shipping is asynchronous: a flush never waits for the standby, and changes written in the last
+ * moments before the primary fails may be missing on the standby.
+ */
+public final class ReplicationPrimary implements Closeable {
+
+    private static final int MAX_PENDING_FRAMES = 65536;
+    /** Frames of the initial copy that may wait at once, leaving the rest for live changes. */
+    private static final int MAX_PENDING_SYNC_FRAMES = 1024;
+    private static final int SYNC_ARCHIVE_BATCH = 4096;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long RETRY_DELAY_MILLIS = 1000L;
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000L;
+
+    private final PlayerStateManager manager;
+    private final InetSocketAddress standby;
+    private final BlockingQueue<PendingFrame> queue = new ArrayBlockingQueue<>(MAX_PENDING_FRAMES);
+    private final Semaphore syncPermits = new Semaphore(MAX_PENDING_SYNC_FRAMES);
+    /**
+     * Live frames of contexts whose initial copy is not queued yet, by context; guarded by
+     * {@code this}, like every offer to {@link #queue} of a live frame.
+     */
+    private final Map<String, List<PendingFrame>> held = new HashMap<>();
+    private final LongAdder shippedFrames = new LongAdder();
+    private final Thread sender;
+    /** Incremented by the sender on every connect and disconnect; frames of older ones are dropped. */
+    private volatile int generation;
+    private volatile boolean connected;
+    private volatile boolean resyncRequested;
+    private volatile boolean closing;
+    private volatile Socket socket;
+
+    /**
+     * Attaches to {@code manager} and starts connecting to the standby at {@code standby},
+     * retrying until it is reachable.
+     *
+     * @throws IllegalStateException if the manager already replicates
+     */
+    public ReplicationPrimary(PlayerStateManager manager, InetSocketAddress standby) {
+        this.manager = Objects.requireNonNull(manager, "manager");
+        this.standby = Objects.requireNonNull(standby, "standby");
+        manager.attachReplication(this);
+        this.sender = new Thread(this::run, "OffWorkLock-ReplicationPrimary");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public long getShippedFrames() {
+        return shippedFrames.sum();
+    }
+
+    public int getPendingFrames() {
+        return queue.size();
+    }
+
+    /**
+     * Ships players written by a flush; {@code states} lacks the removed ones. Called under the
+     * context's I/O lock, so frames of one context are queued in write order, after its initial
+     * copy if one is being made.
+     */
+    void shipChanges(String contextId, Set<UUID> changed, Map<UUID, PlayerState> states) {
+        offer(ReplicationProtocol.CHANGES, contextId, changed, states);
+    }
+
+    /**
+     * Ships players moved into or out of a context's archive; {@code null} values are removals.
+     */
+    void shipArchive(String contextId, Map<UUID, PlayerState> changes) {
+        offer(ReplicationProtocol.ARCHIVE, contextId, changes.keySet(), changes);
+    }
+
+    void shipResetEpoch(String contextId, long resetEpoch) {
+        if (connected) {
+            offer(new PendingFrame(generation, contextId, resetEpoch, false));
+        }
+    }
+
+    /**
+     * Starts holding back the live frames of a context, which the initial copy made for
+     * connection {@code generation} is about to snapshot, until {@link #releaseChanges}. Called
+     * under the context's I/O lock, so every change after the snapshot is held back and reaches
+     * the standby after the copy, while the copy itself is queued without the lock.
+     *
+     * @return {@code false} if the connection is gone and the copy should stop
+     */
+    synchronized boolean holdChanges(int generation, String contextId) {
+        if (!isCurrent(generation)) {
+            return false;
+        }
+        held.putIfAbsent(contextId, new ArrayList<>());
+        return true;
+    }
+
+    /**
+     * Queues the live frames held back for a context behind its copy, and stops holding them.
+     */
+    synchronized void releaseChanges(int generation, String contextId) {
+        if (this.generation != generation) {
+            // Dropped along with the connection.
+            return;
+        }
+        List<PendingFrame> frames = held.remove(contextId);
+        if (frames == null) {
+            return;
+        }
+        for (PendingFrame frame : frames) {
+            if (!queue.offer(frame)) {
+                resyncRequested = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Queues a frame of the initial copy made for connection {@code generation}, waiting while
+     * too many of them are pending.
+     *
+     * @return {@code false} if the connection is gone and the copy should stop
+     */
+    boolean shipSync(int generation, byte type, String contextId, Map<UUID, PlayerState> states) {
+        return enqueueSync(new PendingFrame(generation, type, contextId, states.keySet(), states, true));
+    }
+
+    boolean shipSyncResetEpoch(int generation, String contextId, long resetEpoch) {
+        return enqueueSync(new PendingFrame(generation, contextId, resetEpoch, true));
+    }
+
+    private boolean enqueueSync(PendingFrame frame) {
+        int generation = frame.generation;
+        try {
+            while (this.generation == generation && !closing) {
+                if (syncPermits.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    if (queue.offer(frame, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                    syncPermits.release();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Ships the records of a context's archive in batches, as part of the initial copy.
+     */
+    boolean shipSyncArchive(int generation, String contextId, StateStore store) throws IOException {
+        Map<UUID, PlayerState> batch = new LinkedHashMap<>();
+        boolean[] current = {true};
+        try (Writer parser = PlayerStateCodec.recordParser((playerId, state) -> {
+            if (state == null || !current[0]) {
+                return;
+            }
+            batch.put(playerId, state);
+            if (batch.size() >= SYNC_ARCHIVE_BATCH) {
+                current[0] = shipSync(generation, ReplicationProtocol.ARCHIVE, contextId, Map.copyOf(batch));
+                batch.clear();
+            }
+        })) {
+            store.exportArchive(contextId, parser);
+        }
+        if (current[0] && !batch.isEmpty()) {
+            current[0] = shipSync(generation, ReplicationProtocol.ARCHIVE, contextId, batch);
+        }
+        return current[0];
+    }
+
+    boolean isCurrent(int generation) {
+        return this.generation == generation && !closing;
+    }
+
+    /**
+     * Ships what is still queued if the standby is connected, then disconnects and detaches from
+     * the manager. Close the manager first so that its final flush is shipped too.
+     */
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        sender.interrupt();
+        try {
+            sender.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        Socket current = socket;
+        if (current != null) {
+            current.close();
+        }
+        manager.detachReplication(this);
+    }
+
+    /**
+     * Live changes are dropped while no standby is connected, as the next connection copies
+     * everything anyway. A full queue means the standby cannot keep up; rather than block the
+     * flush, the connection is restarted with a fresh copy.
+     */
+    private void offer(byte type, String contextId, Collection<UUID> playerIds, Map<UUID, PlayerState> states) {
+        if (!connected || playerIds.isEmpty()) {
+            return;
+        }
+        offer(new PendingFrame(generation, type, contextId, playerIds, states, false));
+    }
+
+    private synchronized void offer(PendingFrame frame) {
+        List<PendingFrame> frames = held.get(frame.contextId);
+        if (frames != null) {
+            // Counted against the queue, which they join once the copy is queued.
+            if (frames.size() + queue.size() < MAX_PENDING_FRAMES) {
+                frames.add(frame);
+            } else {
+                resyncRequested = true;
+            }
+        } else if (!queue.offer(frame)) {
+            resyncRequested = true;
+        }
+    }
+
+    private void run() {
+        while (!closing) {
+            try (Socket connection = new Socket()) {
+                connection.connect(standby, CONNECT_TIMEOUT_MILLIS);
+                connection.setTcpNoDelay(true);
+                socket = connection;
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream(), 1 << 16));
+                out.writeInt(ReplicationProtocol.MAGIC);
+                out.writeInt(ReplicationProtocol.VERSION);
+                out.flush();
+                int current = startGeneration(true);
+                Thread.ofVirtual().name("OffWorkLock-ReplicationSync").start(() -> syncQuietly(current));
+                Thread.ofVirtual().name("OffWorkLock-ReplicationWatch").start(() -> watchQuietly(connection));
+                send(out, connection, current);
+            } catch (IOException ex) {
+                // Standby unreachable or gone; reconnect and copy everything again.
+            } finally {
+                socket = null;
+                startGeneration(false);
+            }
+            if (!closing) {
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS);
+                } catch (InterruptedException ex) {
+                    // Interrupted by close().
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes queued frames until the connection fails or {@link #watchQuietly} finds it closed. On
+     * close, returns once the queue is empty.
+     */
+    private void send(DataOutputStream out, Socket connection, int current) throws IOException {
+        while (true) {
+            if (resyncRequested) {
+                throw new IOException("Replication backlog overflowed");
+            }
+            PendingFrame frame = queue.poll();
+            if (frame == null) {
+                out.flush();
+                if (closing) {
+                    return;
+                }
+                if (connection.isClosed()) {
+                    throw new IOException("Standby closed the connection");
+                }
+                try {
+                    frame = queue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    // Interrupted by close(); drain what is left.
+                }
+                if (frame == null) {
+                    continue;
+                }
+            }
+            release(frame);
+            if (frame.generation == current) {
+                out.write(frame.type == ReplicationProtocol.RESET_EPOCH
+                        ? ReplicationProtocol.encodeResetEpoch(frame.contextId, frame.resetEpoch)
+                        : ReplicationProtocol.encode(frame.type, frame.contextId, frame.playerIds, frame.states));
+                shippedFrames.increment();
+            }
+        }
+    }
+
+    private synchronized int startGeneration(boolean connect) {
+        connected = false;
+        generation++;
+        List<PendingFrame> stale = new ArrayList<>();
+        queue.drainTo(stale);
+        stale.forEach(this::release);
+        held.clear();
+        resyncRequested = false;
+        connected = connect;
+        return generation;
+    }
+
+    /**
+     * Waits for the standby, which never writes, to close the connection, and closes it here too.
+     * A write into a connection the standby has just closed may still succeed, and an idle primary
+     * writes nothing more, so without this it would not reconnect and copy everything again until
+     * the next change.
+     */
+    private static void watchQuietly(Socket connection) {
+        try {
+            while (connection.getInputStream().read() >= 0) {
+                // Nothing is expected; ignored.
+            }
+        } catch (IOException ignored) {
+            // Reset, or closed by this side.
+        } finally {
+            try {
+                connection.close();
+            } catch (IOException ignored) {
+                // Already broken.
+            }
+        }
+    }
+
+    private void release(PendingFrame frame) {
+        if (frame.sync) {
+            syncPermits.release();
+        }
+    }
+
+    private void syncQuietly(int current) {
+        try {
+            manager.replicateAll(this, current);
+        } catch (IOException | RuntimeException ex) {
+            // Copy incomplete; restart the connection so the next one copies again.
+            if (isCurrent(current)) {
+                resyncRequested = true;
+            }
+        }
+    }
+
+    private static final class PendingFrame {
+        final int generation;
+        final byte type;
+        final String contextId;
+        final Collection<UUID> playerIds;
+        final Map<UUID, PlayerState> states;
+        final long resetEpoch;
+        final boolean sync;
+
+        PendingFrame(int generation, byte type, String contextId, Collection<UUID> playerIds,
+                     Map<UUID, PlayerState> states, boolean sync) {
+            this.generation = generation;
+            this.type = type;
+            this.contextId = contextId;
+            this.playerIds = playerIds;
+            this.states = states;
+            this.resetEpoch = 0L;
+            this.sync = sync;
+        }
+
+        PendingFrame(int generation, String contextId, long resetEpoch, boolean sync) {
+            this.generation = generation;
+            this.type = ReplicationProtocol.RESET_EPOCH;
+            this.contextId = contextId;
+            this.playerIds = List.of();
+            this.states = Map.of();
+            this.resetEpoch = resetEpoch;
+            this.sync = sync;
+        }
+    }
+}
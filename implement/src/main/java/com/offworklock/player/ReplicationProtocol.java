@@ -0,0 +1,119 @@
+package com.offworklock.player;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Wire format between {@link ReplicationPrimary} and {@link ReplicationStandby}.
+ * <p>
+ * The primary opens with {@link #MAGIC} and {@link #VERSION} as two ints, then sends frames: a
+ * type byte, the context id in modified UTF-8, the record count as an int, and per record the two
+ * UUID halves, a presence flag and, for present players, the {@link PackedPlayerState} encoding
+ * and last-seen time as longs. Records carry whole states rather than deltas, so applying a frame
+ * twice is harmless. A {@link #RESET_EPOCH} frame carries a single long instead of the records.
+ */
+final class ReplicationProtocol {
+
+    static final int MAGIC = 0x4F574C52; // "OWLR"
+    static final int VERSION = 1;
+
+    /** Players changed in, or removed from, a context. */
+    static final byte CHANGES = 1;
+    /** Every player of a context, replacing what the standby has. */
+    static final byte CONTEXT = 2;
+    /** Players added to, or removed from, the archive of a context. */
+    static final byte ARCHIVE = 3;
+    /** New off-work reset epoch of a context. */
+    static final byte RESET_EPOCH = 4;
+
+    private static final int RECORD_SIZE = 33;
+
+    private ReplicationProtocol() {
+    }
+
+    /**
+     * Encodes the players {@code playerIds} with their states in {@code states}; players missing
+     * from {@code states} are sent as removed.
+     */
+    static byte[] encode(byte type, String contextId, Collection<UUID> playerIds, Map<UUID, PlayerState> states) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(16 + contextId.length() + playerIds.size() * RECORD_SIZE);
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeByte(type);
+            out.writeUTF(contextId);
+            out.writeInt(playerIds.size());
+            for (UUID playerId : playerIds) {
+                PlayerState state = states.get(playerId);
+                out.writeLong(playerId.getMostSignificantBits());
+                out.writeLong(playerId.getLeastSignificantBits());
+                out.writeBoolean(state != null);
+                if (state != null) {
+                    out.writeLong(state.toPacked());
+                    out.writeLong(state.getLastSeen());
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return buffer.toByteArray();
+    }
+
+    static byte[] encodeResetEpoch(String contextId, long resetEpoch) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(16 + contextId.length());
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeByte(RESET_EPOCH);
+            out.writeUTF(contextId);
+            out.writeLong(resetEpoch);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return buffer.toByteArray();
+    }
+
+    static Frame read(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        if (type != CHANGES && type != CONTEXT && type != ARCHIVE && type != RESET_EPOCH) {
+            throw new IOException("Unknown replication frame type " + type);
+        }
+        String contextId = in.readUTF();
+        if (type == RESET_EPOCH) {
+            return new Frame(type, contextId, Map.of(), in.readLong());
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Negative record count in replication frame");
+        }
+        Map<UUID, PlayerState> records = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            UUID playerId = new UUID(in.readLong(), in.readLong());
+            PlayerState state = null;
+            if (in.readBoolean()) {
+                long packed = in.readLong();
+                state = PlayerState.fromPacked(packed, in.readLong());
+            }
+            records.put(playerId, state);
+        }
+        return new Frame(type, contextId, records, 0L);
+    }
+
+    static final class Frame {
+        final byte type;
+        final String contextId;
+        /** {@code null} values are removed players. */
+        final Map<UUID, PlayerState> records;
+        final long resetEpoch;
+
+        Frame(byte type, String contextId, Map<UUID, PlayerState> records, long resetEpoch) {
+            this.type = type;
+            this.contextId = contextId;
+            this.records = records;
+            this.resetEpoch = resetEpoch;
+        }
+    }
+}
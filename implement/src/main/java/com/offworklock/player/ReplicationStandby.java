@@ -0,0 +1,178 @@
+package com.offworklock.player;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Receives the changes shipped by a {@link ReplicationPrimary} and applies them to a local
+ * {@link PlayerStateManager}, which persists them to its own store as usual. The standby's
+ * contexts stay loaded and current, so on failover {@link #promote()} hands over a manager that
+ * serves players without a cold load.
+ * <p>
+ * One primary is served at a time; a new connection replaces the previous one, which lets a
+ * restarted primary reconnect even if the old connection was never closed cleanly. Nothing else
+ * should update the manager until it is promoted. A connection dropped because a change could not
+ * be read or applied is counted in the manager's
+ * {@link PlayerStateManager#getBackgroundFailureCount() background failures}.
+ */
+public final class ReplicationStandby implements Closeable {
+
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000L;
+
+    private final PlayerStateManager manager;
+    private final ServerSocket server;
+    private final Thread acceptor;
+    private final Object applyLock = new Object();
+    private final LongAdder appliedFrames = new LongAdder();
+    private volatile Socket connection;
+    private volatile boolean closing;
+
+    /**
+     * Starts listening on {@code bind}; port 0 picks a free port, see {@link #getLocalPort()}.
+     */
+    public ReplicationStandby(PlayerStateManager manager, InetSocketAddress bind) throws IOException {
+        this.manager = Objects.requireNonNull(manager, "manager");
+        Objects.requireNonNull(bind, "bind");
+        this.server = new ServerSocket();
+        server.setReuseAddress(true);
+        try {
+            server.bind(bind);
+        } catch (IOException ex) {
+            server.close();
+            throw ex;
+        }
+        manager.setStandby(true);
+        this.acceptor = new Thread(this::accept, "OffWorkLock-ReplicationStandby");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getLocalPort() {
+        return server.getLocalPort();
+    }
+
+    public boolean isConnected() {
+        return connection != null;
+    }
+
+    public long getAppliedFrames() {
+        return appliedFrames.sum();
+    }
+
+    /**
+     * Stops replicating and returns the manager for this process to serve players with. Changes
+     * the primary had not shipped yet are lost.
+     */
+    public PlayerStateManager promote() throws IOException {
+        close();
+        return manager;
+    }
+
+    /**
+     * Stops listening and drops the primary's connection. The manager stays open.
+     */
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        server.close();
+        Socket current = connection;
+        if (current != null) {
+            current.close();
+        }
+        try {
+            acceptor.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        // Waits for a frame being applied, so the manager is not updated after promotion.
+        synchronized (applyLock) {
+            connection = null;
+        }
+        manager.setStandby(false);
+    }
+
+    private void accept() {
+        while (!closing) {
+            Socket accepted;
+            try {
+                accepted = server.accept();
+            } catch (IOException ex) {
+                if (closing) {
+                    return;
+                }
+                continue;
+            }
+            Socket previous = connection;
+            connection = accepted;
+            closeQuietly(previous);
+            if (closing) {
+                closeQuietly(accepted);
+                return;
+            }
+            Thread.ofVirtual().name("OffWorkLock-ReplicationReceiver").start(() -> receive(accepted));
+        }
+    }
+
+    private void receive(Socket socket) {
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            if (in.readInt() != ReplicationProtocol.MAGIC || in.readInt() != ReplicationProtocol.VERSION) {
+                throw new IOException("Not an OffWorkLock replication stream, or an unsupported version");
+            }
+            while (true) {
+                ReplicationProtocol.Frame frame = ReplicationProtocol.read(in);
+                synchronized (applyLock) {
+                    if (connection != socket) {
+                        return;
+                    }
+                    apply(frame);
+                }
+                appliedFrames.increment();
+            }
+        } catch (EOFException | SocketException ex) {
+            // Primary disconnected or was replaced; it copies everything again when it reconnects.
+        } catch (IOException ex) {
+            // Malformed stream or local write failure; the primary resyncs on reconnect.
+            manager.recordBackgroundFailure(ex);
+        } catch (RuntimeException ex) {
+            manager.recordBackgroundFailure(new IOException(
+                    "Dropped replication connection from " + socket.getRemoteSocketAddress(), ex));
+        } finally {
+            synchronized (applyLock) {
+                if (connection == socket) {
+                    connection = null;
+                }
+            }
+        }
+    }
+
+    private void apply(ReplicationProtocol.Frame frame) throws IOException {
+        switch (frame.type) {
+            case ReplicationProtocol.CHANGES -> manager.applyReplicated(frame.contextId, frame.records, false);
+            case ReplicationProtocol.CONTEXT -> manager.applyReplicated(frame.contextId, frame.records, true);
+            case ReplicationProtocol.ARCHIVE -> manager.applyReplicatedArchive(frame.contextId, frame.records);
+            case ReplicationProtocol.RESET_EPOCH -> manager.applyReplicatedResetEpoch(frame.contextId, frame.resetEpoch);
+            default -> throw new IOException("Unknown replication frame type " + frame.type);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        if (socket == null) {
+            return;
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Already broken.
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.offworklock.player;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lets several server processes share one player data directory.
+ * <p>
+ * Every context gets a {@code <context>.seq} sidecar holding an 8 byte sequence number. A write
+ * takes an exclusive OS file lock on it, writes only the players this process changed and
+ * increments the sequence. A wrapped store that {@linkplain StateStore#requiresFullContext()
+ * rewrites whole contexts} gets them merged into the context reloaded from disk; any other store
+ * gets just the changed players, which it merges into its files itself. Loads take a shared lock.
+ * Changes made by other processes are therefore merged instead of overwritten, at player
+ * granularity.
+ * <p>
+ * The manager holds the same exclusive lock through {@link #lockForUpdate} from checking for
+ * external changes until its update is written, so two processes changing the same player apply
+ * their changes one after the other and neither is lost. Within this process the file lock is
+ * backed by a reentrant lock per context, and loads and writes from the holding thread reuse it.
+ * <p>
+ * {@link #isModifiedExternally} compares the sequence with the one this process last saw, which
+ * costs a single 8 byte read. The wrapped store must {@linkplain StateStore#supportsSharing()
+ * support sharing}, since formats such as the journal or mapped records keep per-process layout
+ * state that cannot be shared.
+ */
+public final class SharedStateStore implements StateStore {
+
+    private final StateStore delegate;
+    private final Path storageDirectory;
+    private final Map<String, Long> seenSequences = new ConcurrentHashMap<>();
+    private final Map<String, ReentrantLock> contextLocks = new ConcurrentHashMap<>();
+    /** Sequence file channels locked by {@link #lockForUpdate}, only touched by the lock holder. */
+    private final Map<String, FileChannel> updateChannels = new ConcurrentHashMap<>();
+
+    public SharedStateStore(StateStore delegate, Path storageDirectory) throws IOException {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.storageDirectory = Objects.requireNonNull(storageDirectory, "storageDirectory");
+        if (!delegate.supportsSharing()) {
+            throw new IllegalArgumentException(
+                    "Shared storage needs a backend whose files can be shared, such as TEXT, COMPACT or BUCKETED");
+        }
+        Files.createDirectories(storageDirectory);
+    }
+
+    @Override
+    public Map<UUID, PlayerState> load(String contextId) throws IOException {
+        return locked(contextId, true, channel -> {
+            long sequence = readSequence(channel);
+            Map<UUID, PlayerState> loaded = delegate.load(contextId);
+            seenSequences.put(contextId, sequence);
+            return loaded;
+        });
+    }
+
+    /**
+     * Merges the changed players into the current on-disk context, reloading it first only for
+     * stores that need the whole context. If another process wrote in the meantime, the context is
+     * reported as modified afterwards so the caller reloads the merged result.
+     */
+    @Override
+    public void write(String contextId, Map<UUID, PlayerState> records, Set<UUID> changed, boolean force) throws IOException {
+        locked(contextId, false, channel -> {
+            long sequence = readSequence(channel);
+            if (delegate.requiresFullContext()) {
+                Map<UUID, PlayerState> merged = delegate.load(contextId);
+                for (UUID playerId : changed) {
+                    PlayerState state = records.get(playerId);
+                    if (state != null) {
+                        merged.put(playerId, state);
+                    } else {
+                        merged.remove(playerId);
+                    }
+                }
+                delegate.write(contextId, merged, changed, force);
+            } else {
+                delegate.write(contextId, records, changed, force);
+            }
+            writeSequence(channel, sequence + 1, force);
+            Long seen = seenSequences.get(contextId);
+            seenSequences.put(contextId, seen != null && seen == sequence ? sequence + 1 : sequence);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean isShared() {
+        return true;
+    }
+
+    @Override
+    public Closeable lockForUpdate(String contextId) throws IOException {
+        ReentrantLock lock = lock(contextId);
+        lock.lock();
+        if (lock.getHoldCount() == 1) {
+            try {
+                FileChannel channel = openSequence(contextId);
+                try {
+                    channel.lock();
+                } catch (IOException | RuntimeException ex) {
+                    channel.close();
+                    throw ex;
+                }
+                updateChannels.put(contextId, channel);
+            } catch (IOException | RuntimeException ex) {
+                lock.unlock();
+                throw ex;
+            }
+        }
+        return () -> {
+            try {
+                if (lock.getHoldCount() == 1) {
+                    // Closing the channel releases the file lock.
+                    updateChannels.remove(contextId).close();
+                }
+            } finally {
+                lock.unlock();
+            }
+        };
+    }
+
+    @Override
+    public boolean isModifiedExternally(String contextId) throws IOException {
+        Long seen = seenSequences.get(contextId);
+        if (seen == null) {
+            return false;
+        }
+        // Closing any channel of the file can drop every lock this process holds on it, so the
+        // file is only opened while no update lock is held.
+        ReentrantLock lock = lock(contextId);
+        lock.lock();
+        try {
+            FileChannel held = updateChannels.get(contextId);
+            if (held != null) {
+                return readSequence(held) != seen;
+            }
+            Path file = sequenceFile(contextId);
+            if (!Files.exists(file)) {
+                return seen != 0L;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                return readSequence(channel) != seen;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void release(String contextId) throws IOException {
+        seenSequences.remove(contextId);
+        delegate.release(contextId);
+    }
+
+    @Override
+    public boolean importLegacy(String contextId) throws IOException {
+        return locked(contextId, false, channel -> delegate.importLegacy(contextId));
+    }
+
+    @Override
+    public boolean supportsArchive() {
+        return delegate.supportsArchive();
+    }
+
+    @Override
+    public void archive(String contextId, Map<UUID, PlayerState> changes) throws IOException {
+        locked(contextId, false, channel -> {
+            delegate.archive(contextId, changes);
+            return null;
+        });
+    }
+
+    @Override
+    public PlayerState loadArchived(String contextId, UUID playerId) throws IOException {
+        return locked(contextId, true, channel -> delegate.loadArchived(contextId, playerId));
+    }
+
+    @Override
+    public void exportArchive(String contextId, Writer out) throws IOException {
+        locked(contextId, true, channel -> {
+            delegate.exportArchive(contextId, out);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean supportsResetEpoch() {
+        return delegate.supportsResetEpoch();
+    }
+
+    @Override
+    public long loadResetEpoch(String contextId) throws IOException {
+        return locked(contextId, true, channel -> delegate.loadResetEpoch(contextId));
+    }
+
+    /**
+     * Also increments the sequence, so other processes reload the context and pick up the epoch.
+     */
+    @Override
+    public void writeResetEpoch(String contextId, long resetEpoch) throws IOException {
+        locked(contextId, false, channel -> {
+            long sequence = readSequence(channel);
+            delegate.writeResetEpoch(contextId, resetEpoch);
+            writeSequence(channel, sequence + 1, true);
+            Long seen = seenSequences.get(contextId);
+            seenSequences.put(contextId, seen != null && seen == sequence ? sequence + 1 : sequence);
+            return null;
+        });
+    }
+
+    @Override
+    public void setBackgroundFailureHandler(Consumer<IOException> handler) {
+        delegate.setBackgroundFailureHandler(handler);
+    }
+
+    @Override
+    public Set<String> listContexts() throws IOException {
+        return delegate.listContexts();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    private ReentrantLock lock(String contextId) {
+        return contextLocks.computeIfAbsent(contextId, ignored -> new ReentrantLock());
+    }
+
+    /**
+     * Runs {@code action} with the context's sequence file locked, shared or exclusively. Inside
+     * {@link #lockForUpdate} the exclusive lock held there is used instead.
+     */
+    private <T> T locked(String contextId, boolean shared, LockedAction<T> action) throws IOException {
+        ReentrantLock lock = lock(contextId);
+        lock.lock();
+        try {
+            FileChannel held = updateChannels.get(contextId);
+            if (held != null) {
+                return action.run(held);
+            }
+            try (FileChannel channel = openSequence(contextId)) {
+                // Released when the channel is closed.
+                channel.lock(0, Long.MAX_VALUE, shared);
+                return action.run(channel);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private FileChannel openSequence(String contextId) throws IOException {
+        return FileChannel.open(sequenceFile(contextId),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private Path sequenceFile(String contextId) {
+        return storageDirectory.resolve(contextId + ".seq");
+    }
+
+    private static long readSequence(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                return 0L;
+            }
+        }
+        return buffer.getLong(0);
+    }
+
+    private static void writeSequence(FileChannel channel, long sequence, boolean force) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).putLong(0, sequence);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+        if (force) {
+            channel.force(false);
+        }
+    }
+
+    @FunctionalInterface
+    private interface LockedAction<T> {
+        T run(FileChannel channel) throws IOException;
+    }
+}
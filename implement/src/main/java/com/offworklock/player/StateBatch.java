@@ -0,0 +1,105 @@
+package com.offworklock.player;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.LongUnaryOperator;
+import java.util.function.UnaryOperator;
+
+/**
+ * Collects player state changes to be applied together by
+ * {@link PlayerStateManager#applyBatch(StateBatch)}.
+ * <p>
+ * Changes may span players and contexts. Each context is locked once and written at most once per
+ * batch, regardless of how many of its players change. Changes to the same player are applied in
+ * the order they were added.
+ */
+public final class StateBatch {
+
+    private final List<Operation> operations = new ArrayList<>();
+
+    /**
+     * Replaces a player's state.
+     */
+    public StateBatch put(String contextId, UUID playerId, PlayerState state) {
+        Objects.requireNonNull(state, "state");
+        return update(contextId, playerId, ignored -> state);
+    }
+
+    public StateBatch put(ContextHandle context, UUID playerId, PlayerState state) {
+        Objects.requireNonNull(state, "state");
+        return update(context, playerId, ignored -> state);
+    }
+
+    /**
+     * Transforms a player's current state; see {@link PlayerStateManager#update}.
+     */
+    public StateBatch update(String contextId, UUID playerId, UnaryOperator<PlayerState> transform) {
+        operations.add(new Operation(
+                contextId,
+                null,
+                Objects.requireNonNull(playerId, "playerId"),
+                Objects.requireNonNull(transform, "transform")
+        ));
+        return this;
+    }
+
+    public StateBatch update(ContextHandle context, UUID playerId, UnaryOperator<PlayerState> transform) {
+        operations.add(new Operation(
+                null,
+                Objects.requireNonNull(context, "context"),
+                Objects.requireNonNull(playerId, "playerId"),
+                Objects.requireNonNull(transform, "transform")
+        ));
+        return this;
+    }
+
+    /**
+     * Transforms a player's current state in its packed encoding; see
+     * {@link PlayerStateManager#updatePacked}.
+     */
+    public StateBatch updatePacked(String contextId, UUID playerId, LongUnaryOperator transform) {
+        Objects.requireNonNull(transform, "transform");
+        return update(contextId, playerId, state -> state.withPacked(transform.applyAsLong(state.toPacked())));
+    }
+
+    public StateBatch updatePacked(ContextHandle context, UUID playerId, LongUnaryOperator transform) {
+        Objects.requireNonNull(transform, "transform");
+        return update(context, playerId, state -> state.withPacked(transform.applyAsLong(state.toPacked())));
+    }
+
+    public int size() {
+        return operations.size();
+    }
+
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    List<Operation> operations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    /**
+     * One change, naming its context either by id or, if already resolved, by handle.
+     */
+    static final class Operation {
+        final String contextId;
+        final ContextHandle handle;
+        final UUID playerId;
+        final UnaryOperator<PlayerState> transform;
+
+        private Operation(String contextId, ContextHandle handle, UUID playerId, UnaryOperator<PlayerState> transform) {
+            this.contextId = contextId;
+            this.handle = handle;
+            this.playerId = playerId;
+            this.transform = transform;
+        }
+
+        Operation withHandle(ContextHandle resolved) {
+            return resolved == handle ? this : new Operation(contextId, resolved, playerId, transform);
+        }
+    }
+}
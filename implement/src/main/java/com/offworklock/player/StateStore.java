@@ -0,0 +1,198 @@
+package com.offworklock.player;
+
+import com.offworklock.config.ConfigData;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Persistence backend used by {@link PlayerStateManager}.
+ * <p>
+ * A store only moves player state between memory and its medium; caching, locking and dirty
+ * tracking stay in the manager. Context ids handed to a store are already sanitized to
+ * {@code [a-zA-Z0-9-_]}. The manager never loads or writes the same context from two threads at
+ * once, but different contexts are accessed concurrently.
+ */
+public interface StateStore extends Closeable {
+
+    /**
+     * Reads every stored player of a context. Unknown contexts yield an empty map.
+     */
+    Map<UUID, PlayerState> load(String contextId) throws IOException;
+
+    /**
+     * Persists the changes of one context.
+     *
+     * @param records every player of the context if {@link #requiresFullContext()} is true,
+     *                otherwise only the changed players; a changed player without a record, or
+     *                with a {@code null} one, was removed
+     * @param changed players whose state changed since the previous write
+     * @param force   make the write durable across power loss before returning
+     */
+    void write(String contextId, Map<UUID, PlayerState> records, Set<UUID> changed, boolean force) throws IOException;
+
+    /**
+     * Whether {@link #write} needs the whole context rather than only the changed players.
+     * <p>
+     * The manager then passes a snapshot of the context's table, and the first update after it
+     * copies the table's columns. With {@link ConfigData.PersistenceMode#IMMEDIATE} that is one
+     * copy of the whole context per update on top of rewriting it; the other persistence modes
+     * batch many updates into one write and one copy.
+     */
+    default boolean requiresFullContext() {
+        return false;
+    }
+
+    /**
+     * Whether several processes may use this store's files at once through
+     * {@link SharedStateStore}, which merges every write into the stored context. That needs files
+     * that are complete on their own, without layout state kept in memory between writes; by
+     * default only stores that rewrite whole contexts qualify. A store that takes only the changed
+     * players must merge them into what is on disk, not into what it last loaded.
+     */
+    default boolean supportsSharing() {
+        return requiresFullContext();
+    }
+
+    /**
+     * Whether the stored context was changed by someone else, such as another server process,
+     * since this store last loaded or wrote it. Called often, so it must be cheap.
+     */
+    default boolean isModifiedExternally(String contextId) throws IOException {
+        return false;
+    }
+
+    /**
+     * Whether other processes may write the same contexts, in which case the manager takes
+     * {@link #lockForUpdate} around every update.
+     */
+    default boolean isShared() {
+        return false;
+    }
+
+    /**
+     * Keeps other processes from writing a context until the returned lock is closed, so that the
+     * caller can check {@link #isModifiedExternally}, change the context and write it without
+     * losing their changes. Loads and writes of the context by the holding thread go through.
+     */
+    default Closeable lockForUpdate(String contextId) throws IOException {
+        throw new UnsupportedOperationException("This store is not shared");
+    }
+
+    /**
+     * Called once the manager has unloaded a context, so per-context resources can be freed.
+     */
+    default void release(String contextId) throws IOException {
+    }
+
+    /**
+     * Converts a context still kept as a legacy text snapshot ({@code <context>.dat}) into this
+     * store's own format, streaming it record by record rather than loading it whole. Called
+     * before the context is loaded; see {@link LegacyStateConverter}.
+     *
+     * @return whether the context was converted, {@code false} if it needed no conversion
+     */
+    default boolean importLegacy(String contextId) throws IOException {
+        return false;
+    }
+
+    /**
+     * Whether the store keeps players moved out of their context by retention, see
+     * {@link #archive}.
+     */
+    default boolean supportsArchive() {
+        return false;
+    }
+
+    /**
+     * Durably adds players to or, for {@code null} values, removes them from the cold archive of a
+     * context. The players are removed from the context itself by a separate {@link #write}.
+     */
+    default void archive(String contextId, Map<UUID, PlayerState> changes) throws IOException {
+        throw new UnsupportedOperationException("This store has no archive");
+    }
+
+    /**
+     * Reads one archived player, or returns {@code null} if the player is not archived.
+     */
+    default PlayerState loadArchived(String contextId, UUID playerId) throws IOException {
+        return null;
+    }
+
+    /**
+     * Writes every archived player of a context to {@code out} in the text line format of
+     * {@link TextStateStore}, for backups. Unlocks revoked by the context's reset epoch are
+     * written revoked, since the copy may be restored where that epoch is not known. Stores
+     * without an archive write nothing.
+     */
+    default void exportArchive(String contextId, Writer out) throws IOException {
+    }
+
+    /**
+     * Whether the store keeps off-work reset epochs, see {@link #writeResetEpoch}.
+     */
+    default boolean supportsResetEpoch() {
+        return false;
+    }
+
+    /**
+     * Returns the off-work reset epoch of a context in epoch seconds, or 0 if it was never reset.
+     * Unlocks of players last seen before it are revoked; see
+     * {@link PlayerStateManager#resetOffWorkUnlocks(String)}.
+     */
+    default long loadResetEpoch(String contextId) throws IOException {
+        return 0L;
+    }
+
+    /**
+     * Durably stores the off-work reset epoch of a context.
+     */
+    default void writeResetEpoch(String contextId, long resetEpoch) throws IOException {
+        throw new UnsupportedOperationException("This store keeps no reset epochs");
+    }
+
+    /**
+     * Sets where to report failures of work the store does in the background, such as journal
+     * compaction, which no caller would see otherwise. The manager sets it before first use.
+     */
+    default void setBackgroundFailureHandler(Consumer<IOException> handler) {
+    }
+
+    /**
+     * Returns the ids of all contexts that have stored data.
+     */
+    Set<String> listContexts() throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    /**
+     * Creates the built-in store selected by {@link ConfigData#getStorageBackend()}. Stores on
+     * disk get an {@link ArchivingStateStore}, and are wrapped in a {@link SharedStateStore} if
+     * {@link ConfigData#isSharedStorage()} is set.
+     */
+    static StateStore create(Path storageDirectory, ConfigData config) throws IOException {
+        Objects.requireNonNull(storageDirectory, "storageDirectory");
+        Objects.requireNonNull(config, "config");
+        StateStore store = switch (config.getStorageBackend()) {
+            case TEXT -> new TextStateStore(storageDirectory);
+            case JOURNAL -> new JournalStateStore(storageDirectory, config.getJournalCompactionThreshold());
+            case MAPPED -> new MappedStateStore(storageDirectory);
+            case COMPACT -> new CompactStateStore(storageDirectory);
+            case BUCKETED -> new BucketedStateStore(storageDirectory, config.getContextBucketCount());
+            case MEMORY -> new MemoryStateStore();
+        };
+        if (config.getStorageBackend() != ConfigData.StorageBackend.MEMORY) {
+            store = new ArchivingStateStore(store, storageDirectory);
+        }
+        return config.isSharedStorage() ? new SharedStateStore(store, storageDirectory) : store;
+    }
+}
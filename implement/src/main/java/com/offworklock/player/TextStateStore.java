@@ -0,0 +1,67 @@
+package com.offworklock.player;
+
+import com.offworklock.util.AtomicFiles;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The original storage format: one human-readable {@code <context>.dat} file per context, rewritten
+ * in full on every write through a temp file and an atomic rename.
+ */
+public final class TextStateStore implements StateStore {
+
+    private final Path storageDirectory;
+
+    public TextStateStore(Path storageDirectory) throws IOException {
+        this.storageDirectory = Objects.requireNonNull(storageDirectory, "storageDirectory");
+        Files.createDirectories(storageDirectory);
+    }
+
+    @Override
+    public Map<UUID, PlayerState> load(String contextId) throws IOException {
+        Map<UUID, PlayerState> loaded = new LinkedHashMap<>();
+        PlayerStateCodec.readInto(contextFile(contextId), loaded);
+        return loaded;
+    }
+
+    @Override
+    public void write(String contextId, Map<UUID, PlayerState> records, Set<UUID> changed, boolean force) throws IOException {
+        AtomicFiles.writeString(contextFile(contextId), PlayerStateCodec.format(contextId, records), force);
+    }
+
+    @Override
+    public boolean requiresFullContext() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsResetEpoch() {
+        return true;
+    }
+
+    @Override
+    public long loadResetEpoch(String contextId) throws IOException {
+        return ContextFiles.loadResetEpoch(storageDirectory, contextId);
+    }
+
+    @Override
+    public void writeResetEpoch(String contextId, long resetEpoch) throws IOException {
+        ContextFiles.writeResetEpoch(storageDirectory, contextId, resetEpoch);
+    }
+
+    @Override
+    public Set<String> listContexts() throws IOException {
+        return ContextFiles.list(storageDirectory, ".dat");
+    }
+
+    private Path contextFile(String contextId) {
+        return storageDirectory.resolve(contextId + ".dat");
+    }
+}
@@ -0,0 +1,72 @@
+package com.offworklock.player;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes dirty contexts from the server tick in {@link com.offworklock.config.ConfigData.PersistenceMode#TICK}
+ * mode, within a time budget per tick.
+ * <p>
+ * Contexts are written round-robin; whatever does not fit into a tick's budget is continued on the
+ * next one. The budget is checked before each write, and a context is always written as a whole,
+ * so a single large write (a big context on a backend that rewrites the whole file) can run past
+ * the budget. The rest of the queue then waits for a later tick, as with any tick that runs out
+ * of budget. When a tick runs out of budget with contexts still waiting, writes arrive faster than
+ * they can be drained, so the scheduler pauses for a growing number of ticks (doubling up to a
+ * limit). Changes keep accumulating in memory meanwhile and are later written together, one write
+ * per context instead of one per change. Each tick that drains the queue halves the pause again.
+ * <p>
+ * Only used from the server thread.
+ */
+final class TickFlushScheduler {
+
+    private final PlayerStateManager manager;
+    private final long budgetNanos;
+    private final int maxBackoffTicks;
+    private final Deque<String> pending = new ArrayDeque<>();
+    private int backoffTicks;
+    private int skipTicks;
+
+    TickFlushScheduler(PlayerStateManager manager, int budgetMillis, int maxBackoffTicks) {
+        this.manager = manager;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, budgetMillis));
+        this.maxBackoffTicks = Math.max(0, maxBackoffTicks);
+    }
+
+    /**
+     * Runs one tick's worth of flushing.
+     *
+     * @return number of contexts written
+     */
+    int tick() {
+        if (skipTicks > 0) {
+            skipTicks--;
+            return 0;
+        }
+        if (pending.isEmpty()) {
+            pending.addAll(manager.dirtyContextIds());
+        }
+        long deadline = System.nanoTime() + budgetNanos;
+        int written = 0;
+        while (!pending.isEmpty() && System.nanoTime() < deadline) {
+            String contextId = pending.poll();
+            try {
+                if (manager.flushLoadedContext(contextId)) {
+                    written++;
+                }
+            } catch (IOException ex) {
+                // The context stays dirty and is picked up again on a later round.
+                manager.recordBackgroundFailure(ex);
+            }
+        }
+        if (pending.isEmpty()) {
+            backoffTicks /= 2;
+        } else {
+            backoffTicks = Math.min(maxBackoffTicks, Math.max(1, backoffTicks * 2));
+        }
+        skipTicks = backoffTicks;
+        return written;
+    }
+}
@@ -2,6 +2,8 @@ package com.offworklock.points;
 
 import com.offworklock.config.ConfigData;
 import com.offworklock.config.ConfigManager;
+import com.offworklock.player.ContextHandle;
+import com.offworklock.player.PackedPlayerState;
 import com.offworklock.player.PlayerState;
 import com.offworklock.player.PlayerStateManager;
 
@@ -31,6 +33,14 @@ public final class PointService {
      */
     public PointAwardResult handleBlockMined(String contextId, UUID playerId, String blockId) throws IOException {
         Objects.requireNonNull(contextId, "contextId");
+        return handleBlockMined(playerStateManager.resolveContext(contextId), playerId, blockId);
+    }
+
+    /**
+     * Same as {@link #handleBlockMined(String, UUID, String)} for an already resolved context.
+     */
+    public PointAwardResult handleBlockMined(ContextHandle context, UUID playerId, String blockId) throws IOException {
+        Objects.requireNonNull(context, "context");
         Objects.requireNonNull(playerId, "playerId");
         Objects.requireNonNull(blockId, "blockId");
 
@@ -40,20 +50,15 @@ public final class PointService {
             return PointAwardResult.noMatch();
         }
 
-        PlayerState state = playerStateManager.getOrCreateState(contextId, playerId);
         if (config.getPointAccumulationMode() == ConfigData.PointAccumulationMode.MANUAL) {
             // Manual mode keeps the normal drops and defers point conversion to exchange.
+            PlayerState state = playerStateManager.getOrCreateState(context, playerId);
             return PointAwardResult.manualMatch(value, state.getPoints());
         }
 
-        int current = Math.max(0, state.getPoints());
-        long updated = (long) current + value;
-        int newTotal = (int) Math.max(0L, Math.min(Integer.MAX_VALUE, updated));
-
-        PlayerState updatedState = state.withPoints(newTotal);
-        playerStateManager.updateState(contextId, playerId, updatedState);
-
-        return PointAwardResult.automaticAward(value, newTotal);
+        PlayerState updatedState = playerStateManager.updatePacked(context, playerId, state -> addPoints(state, value),
+                config.getPointAwardDurability());
+        return PointAwardResult.automaticAward(value, updatedState.getPoints());
     }
 
     /**
@@ -66,6 +71,16 @@ public final class PointService {
                                              UUID playerId,
                                              Map<String, Integer> inventoryCounts) throws IOException {
         Objects.requireNonNull(contextId, "contextId");
+        return exchangeOres(playerStateManager.resolveContext(contextId), playerId, inventoryCounts);
+    }
+
+    /**
+     * Same as {@link #exchangeOres(String, UUID, Map)} for an already resolved context.
+     */
+    public ManualExchangeResult exchangeOres(ContextHandle context,
+                                             UUID playerId,
+                                             Map<String, Integer> inventoryCounts) throws IOException {
+        Objects.requireNonNull(context, "context");
         Objects.requireNonNull(playerId, "playerId");
         Objects.requireNonNull(inventoryCounts, "inventoryCounts");
 
@@ -102,15 +117,17 @@ public final class PointService {
             return ManualExchangeResult.empty();
         }
 
-        PlayerState state = playerStateManager.getOrCreateState(contextId, playerId);
-        int current = Math.max(0, state.getPoints());
-        long updated = (long) current + totalPoints;
-        int newTotal = (int) Math.max(0L, Math.min(Integer.MAX_VALUE, updated));
-
-        PlayerState updatedState = state.withPoints(newTotal);
-        playerStateManager.updateState(contextId, playerId, updatedState);
+        long gained = totalPoints;
+        PlayerState updatedState = playerStateManager.updatePacked(context, playerId, state -> addPoints(state, gained),
+                config.getPointAwardDurability());
+        return ManualExchangeResult.success((int) totalPoints, updatedState.getPoints(), consumed);
+    }
 
-        return ManualExchangeResult.success((int) totalPoints, newTotal, consumed);
+    private static long addPoints(long state, long amount) {
+        int current = Math.max(0, PackedPlayerState.points(state));
+        long updated = (long) current + amount;
+        int newTotal = (int) Math.max(0L, Math.min(Integer.MAX_VALUE, updated));
+        return PackedPlayerState.withPoints(state, newTotal);
     }
 
     /**
@@ -1,10 +1,14 @@
 package com.offworklock.session;
 
 import com.offworklock.config.ConfigData;
+import com.offworklock.player.ContextHandle;
+import com.offworklock.player.PackedPlayerState;
 import com.offworklock.player.PlayerState;
 import com.offworklock.player.PlayerStateManager;
+import com.offworklock.player.StateBatch;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.function.Supplier;
@@ -16,6 +20,7 @@ import java.util.function.Supplier;
  * Integration layer responsibilities:
  * - Call {@link #handleSessionStart(String, UUID)} when a player joins.
  * - Call {@link #handleGracefulExit(String, UUID)} on a clean / intended exit path.
+ * - Call {@link #handleGracefulExits(String, Collection)} for all online players when the server stops.
  */
 public final class SessionPolicyHandler {
 
@@ -41,35 +46,45 @@ public final class SessionPolicyHandler {
      */
     public SessionStartResult handleSessionStart(String contextId, UUID playerId) throws IOException {
         Objects.requireNonNull(contextId, "contextId");
+        return handleSessionStart(playerStateManager.resolveContext(contextId), playerId);
+    }
+
+    /**
+     * Same as {@link #handleSessionStart(String, UUID)} for an already resolved context.
+     */
+    public SessionStartResult handleSessionStart(ContextHandle context, UUID playerId) throws IOException {
+        Objects.requireNonNull(context, "context");
         Objects.requireNonNull(playerId, "playerId");
 
         ConfigData config = Objects.requireNonNull(configSupplier.get(), "config");
-        PlayerState state = playerStateManager.getOrCreateState(contextId, playerId);
+        boolean[] forcedExitDetected = new boolean[1];
 
-        boolean forcedExitDetected = state.isSessionOpen();
-        PlayerState updated = state.withSessionOpen(true);
+        PlayerState updated = playerStateManager.updatePacked(context, playerId, state -> {
+            forcedExitDetected[0] = PackedPlayerState.isSessionOpen(state);
+            long next = PackedPlayerState.withSessionOpen(state, true);
 
-        // Reset counter entirely when tracking is disabled.
-        if (!config.isForcedExitTrackingEnabled() && updated.getForcedExitCount() != 0) {
-            updated = updated.withForcedExitCount(0);
-        }
+            // Reset counter entirely when tracking is disabled.
+            if (!config.isForcedExitTrackingEnabled()) {
+                next = PackedPlayerState.withForcedExitCount(next, 0);
+            }
 
-        AbuseTracker.AbuseReport report = AbuseTracker.AbuseReport.none();
+            if (forcedExitDetected[0] && config.isForcedExitTrackingEnabled()) {
+                next = PackedPlayerState.withForcedExitCount(next, safeIncrement(PackedPlayerState.forcedExitCount(state)));
+            }
+            return next;
+        }, config.getSessionDurability());
 
-        if (forcedExitDetected && config.isForcedExitTrackingEnabled()) {
-            int newCount = safeIncrement(state.getForcedExitCount());
-            updated = updated.withForcedExitCount(newCount);
+        AbuseTracker.AbuseReport report = AbuseTracker.AbuseReport.none();
 
-            if (abuseTracker != null) {
-                report = abuseTracker.onForcedExit(contextId, playerId, updated, config);
-                if (report == null) {
-                    report = AbuseTracker.AbuseReport.none();
-                }
+        // Hooks run after the update is stored so they never execute under the state lock.
+        if (forcedExitDetected[0] && config.isForcedExitTrackingEnabled() && abuseTracker != null) {
+            report = abuseTracker.onForcedExit(context.getContextId(), playerId, updated, config);
+            if (report == null) {
+                report = AbuseTracker.AbuseReport.none();
             }
         }
 
-        playerStateManager.updateState(contextId, playerId, updated);
-        return new SessionStartResult(updated, forcedExitDetected, report);
+        return new SessionStartResult(updated, forcedExitDetected[0], report);
     }
 
     /**
@@ -82,22 +97,57 @@ public final class SessionPolicyHandler {
      */
     public void handleGracefulExit(String contextId, UUID playerId) throws IOException {
         Objects.requireNonNull(contextId, "contextId");
+        handleGracefulExit(playerStateManager.resolveContext(contextId), playerId);
+    }
+
+    /**
+     * Same as {@link #handleGracefulExit(String, UUID)} for an already resolved context.
+     */
+    public void handleGracefulExit(ContextHandle context, UUID playerId) throws IOException {
+        Objects.requireNonNull(context, "context");
         Objects.requireNonNull(playerId, "playerId");
 
         ConfigData config = Objects.requireNonNull(configSupplier.get(), "config");
-        PlayerState state = playerStateManager.getOrCreateState(contextId, playerId);
 
-        PlayerState updated = state.withSessionOpen(false);
+        playerStateManager.updatePacked(context, playerId, state -> applyGracefulExit(state, config),
+                config.getSessionDurability());
+    }
+
+    private long applyGracefulExit(long state, ConfigData config) {
+        long updated = PackedPlayerState.withSessionOpen(state, false);
 
-        if (config.getSessionResetMode() == ConfigData.SessionResetMode.ONE_TIME_UNLOCK && state.canOffWork()) {
-            updated = updated.withOffWork(false);
+        if (config.getSessionResetMode() == ConfigData.SessionResetMode.ONE_TIME_UNLOCK) {
+            updated = PackedPlayerState.withOffWork(updated, false);
         }
 
-        if (!config.isForcedExitTrackingEnabled() && updated.getForcedExitCount() != 0) {
-            updated = updated.withForcedExitCount(0);
+        if (!config.isForcedExitTrackingEnabled()) {
+            updated = PackedPlayerState.withForcedExitCount(updated, 0);
         }
+        return updated;
+    }
 
-        playerStateManager.updateState(contextId, playerId, updated);
+    /**
+     * Applies {@link #handleGracefulExit(String, UUID)} to many players at once, e.g. every online
+     * player when the server stops. The context is written once for the whole group.
+     */
+    public void handleGracefulExits(String contextId, Collection<UUID> playerIds) throws IOException {
+        Objects.requireNonNull(contextId, "contextId");
+        handleGracefulExits(playerStateManager.resolveContext(contextId), playerIds);
+    }
+
+    /**
+     * Same as {@link #handleGracefulExits(String, Collection)} for an already resolved context.
+     */
+    public void handleGracefulExits(ContextHandle context, Collection<UUID> playerIds) throws IOException {
+        Objects.requireNonNull(context, "context");
+        Objects.requireNonNull(playerIds, "playerIds");
+
+        ConfigData config = Objects.requireNonNull(configSupplier.get(), "config");
+        StateBatch batch = new StateBatch();
+        for (UUID playerId : playerIds) {
+            batch.updatePacked(context, playerId, state -> applyGracefulExit(state, config));
+        }
+        playerStateManager.applyBatch(batch, config.getSessionDurability());
     }
 
     private int safeIncrement(int value) {
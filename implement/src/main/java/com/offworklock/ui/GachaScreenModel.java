@@ -4,6 +4,7 @@ import com.offworklock.config.ConfigData;
 import com.offworklock.config.ConfigManager;
 import com.offworklock.gacha.GachaService;
 import com.offworklock.gacha.GachaService.RewardDisplay;
+import com.offworklock.player.ContextHandle;
 import com.offworklock.player.PlayerState;
 import com.offworklock.player.PlayerStateManager;
 
@@ -48,10 +49,18 @@ public final class GachaScreenModel {
      */
     public ScreenSnapshot snapshot(String contextId, UUID playerId) throws IOException {
         Objects.requireNonNull(contextId, "contextId");
+        return snapshot(playerStateManager.resolveContext(contextId), playerId);
+    }
+
+    /**
+     * Same as {@link #snapshot(String, UUID)} for an already resolved context.
+     */
+    public ScreenSnapshot snapshot(ContextHandle context, UUID playerId) throws IOException {
+        Objects.requireNonNull(context, "context");
         Objects.requireNonNull(playerId, "playerId");
 
         ConfigData config = Objects.requireNonNull(configManager.getConfig(), "config");
-        PlayerState state = playerStateManager.getOrCreateState(contextId, playerId);
+        PlayerState state = playerStateManager.getOrCreateState(context, playerId);
 
         int points = Math.max(0, state.getPoints());
         int cost = Math.max(0, config.getGachaCost());
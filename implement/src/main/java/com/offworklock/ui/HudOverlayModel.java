@@ -2,6 +2,7 @@ package com.offworklock.ui;
 
 import com.offworklock.config.ConfigData;
 import com.offworklock.config.ConfigManager;
+import com.offworklock.player.ContextHandle;
 import com.offworklock.player.PlayerState;
 import com.offworklock.player.PlayerStateManager;
 
@@ -13,7 +14,8 @@ import java.util.UUID;
  * Provides HUD overlay data showing the current point status and unlock state.
  * <p>
  * The integration layer should:
- * - Call {@link #build(String, UUID)} each render tick (or on a suitable interval),
+ * - Call {@link #build(ContextHandle, UUID)} each render tick (or on a suitable interval) with the
+ *   handle resolved when the world loaded,
  * - Read the returned {@link HudSnapshot},
  * - Render only when {@link HudSnapshot#isVisible()} is true.
  */
@@ -36,6 +38,14 @@ public final class HudOverlayModel {
      */
     public HudSnapshot build(String contextId, UUID playerId) throws IOException {
         Objects.requireNonNull(contextId, "contextId");
+        return build(playerStateManager.resolveContext(contextId), playerId);
+    }
+
+    /**
+     * Same as {@link #build(String, UUID)} for an already resolved context.
+     */
+    public HudSnapshot build(ContextHandle context, UUID playerId) throws IOException {
+        Objects.requireNonNull(context, "context");
         Objects.requireNonNull(playerId, "playerId");
 
         ConfigData config = Objects.requireNonNull(configManager.getConfig(), "config");
@@ -43,7 +53,7 @@ public final class HudOverlayModel {
             return HudSnapshot.hidden();
         }
 
-        PlayerState state = playerStateManager.getOrCreateState(contextId, playerId);
+        PlayerState state = playerStateManager.getOrCreateState(context, playerId);
         int points = Math.max(0, state.getPoints());
         int gachaCost = Math.max(0, config.getGachaCost());
 
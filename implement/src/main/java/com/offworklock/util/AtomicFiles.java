@@ -0,0 +1,122 @@
+package com.offworklock.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Crash-safe file replacement: content is written to a sibling temp file which is then renamed
+ * over the target, so readers only ever see the old or the new file, never a truncated one.
+ */
+public final class AtomicFiles {
+    private AtomicFiles() {
+    }
+
+    public static void writeString(Path target, String content, boolean force) throws IOException {
+        write(target, content.getBytes(StandardCharsets.UTF_8), force);
+    }
+
+    /**
+     * Replaces {@code target} with {@code content}.
+     *
+     * @param force also fsync the data and the directory entry before returning, making the new
+     *              content durable across power loss rather than only across process crashes
+     */
+    public static void write(Path target, byte[] content, boolean force) throws IOException {
+        Path temp = tempFile(target);
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (force) {
+                channel.force(true);
+            }
+        }
+        moveIntoPlace(temp, target, force);
+    }
+
+    /**
+     * Like {@link #write(Path, byte[], boolean)}, but streams the content instead of holding it in
+     * memory. {@code content} must not close the stream it is given.
+     */
+    public static void write(Path target, Content content, boolean force) throws IOException {
+        Path temp = tempFile(target);
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            content.writeTo(out);
+            out.flush();
+            if (force) {
+                channel.force(true);
+            }
+        }
+        moveIntoPlace(temp, target, force);
+    }
+
+    /**
+     * Returns the temp file a write of {@code target} goes through, for callers that need to fill
+     * several files at once and then {@link #commit} them.
+     */
+    public static Path tempFile(Path target) {
+        return target.resolveSibling(target.getFileName() + ".tmp");
+    }
+
+    /**
+     * Replaces {@code target} with a completely written temp file from {@link #tempFile}.
+     *
+     * @param force fsync the temp file before and the directory entry after the rename
+     */
+    public static void commit(Path temp, Path target, boolean force) throws IOException {
+        if (force) {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        moveIntoPlace(temp, target, force);
+    }
+
+    private static void moveIntoPlace(Path temp, Path target, boolean force) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (force) {
+            forceDirectory(target.toAbsolutePath().getParent());
+        }
+    }
+
+    /**
+     * Flushes a directory entry so a rename inside it survives power loss. Some platforms (Windows)
+     * cannot open directories; there the rename is already durable once the call returns.
+     */
+    public static void forceDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+            // Not supported on this platform.
+        }
+    }
+
+    /**
+     * Produces the content of a streamed {@link #write(Path, Content, boolean)}.
+     */
+    @FunctionalInterface
+    public interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+}
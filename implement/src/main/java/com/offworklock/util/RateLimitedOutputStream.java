@@ -0,0 +1,54 @@
+package com.offworklock.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Passes bytes through at no more than a fixed average rate, sleeping whenever the writer gets
+ * ahead of it, so that bulk copies do not compete with latency-sensitive disk I/O.
+ */
+public final class RateLimitedOutputStream extends FilterOutputStream {
+
+    /** Largest single write, so the rate also holds within large writes. */
+    private static final int MAX_CHUNK = 64 * 1024;
+
+    private final RateLimiter limiter;
+
+    /**
+     * @param bytesPerSecond average rate limit; 0 or less disables limiting
+     */
+    public RateLimitedOutputStream(OutputStream out, long bytesPerSecond) {
+        this(out, new RateLimiter(bytesPerSecond));
+    }
+
+    /**
+     * Passes bytes at the rate of {@code limiter}, which other streams may share.
+     */
+    public RateLimitedOutputStream(OutputStream out, RateLimiter limiter) {
+        super(out);
+        this.limiter = limiter;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        throttle(1);
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int chunk = Math.min(len, MAX_CHUNK);
+            throttle(chunk);
+            out.write(b, off, chunk);
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    private void throttle(int bytes) throws InterruptedIOException {
+        limiter.acquire(bytes);
+    }
+}
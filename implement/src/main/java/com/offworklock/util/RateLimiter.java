@@ -0,0 +1,56 @@
+package com.offworklock.util;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces bytes to a fixed average rate, sleeping whenever the caller gets ahead of it. Streams
+ * written one after another can share a limiter, so that the rate holds across all of them
+ * rather than restarting with each. Time spent idle earns at most {@link #MAX_BURST_NANOS} of
+ * catch-up, so a pause is not followed by a burst at full speed. Not thread-safe.
+ */
+public final class RateLimiter {
+
+    /** How far the schedule may lag behind the clock, which also absorbs oversleeping. */
+    private static final long MAX_BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final long bytesPerSecond;
+    /** When the bytes acquired so far are due at the configured rate. */
+    private long due = System.nanoTime();
+    private long acquired;
+
+    /**
+     * @param bytesPerSecond average rate limit; 0 or less disables limiting
+     */
+    public RateLimiter(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Returns the bytes passed so far.
+     */
+    public long getAcquired() {
+        return acquired;
+    }
+
+    /**
+     * Waits until {@code bytes} more may pass without exceeding the rate.
+     */
+    public void acquire(int bytes) throws InterruptedIOException {
+        acquired += bytes;
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        due = Math.max(due, now - MAX_BURST_NANOS) + (long) (bytes * 1e9 / bytesPerSecond);
+        long wait = due - now;
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while rate limiting");
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.offworklock.util;
 
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -75,4 +77,22 @@ public final class StringParsers {
             return defaultValue;
         }
     }
+
+    /**
+     * Parses a time of day such as {@code 09:00}.
+     */
+    public static LocalTime parseTime(String value, LocalTime defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        String trimmed = value.trim();
+        if (trimmed.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return LocalTime.parse(trimmed);
+        } catch (DateTimeParseException ex) {
+            return defaultValue;
+        }
+    }
 }
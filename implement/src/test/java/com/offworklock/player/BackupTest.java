@@ -0,0 +1,75 @@
+package com.offworklock.player;
+
+import com.offworklock.config.ConfigData;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Backups restored into a fresh data directory the documented way: players of the context and of
+ * its archive must come back as a lookup on the live server sees them, for every disk backend,
+ * including an unlock revoked by an off-work reset after the player was archived.
+ */
+class BackupTest {
+
+    private static final String CONTEXT_ID = "w1";
+    private static final UUID ACTIVE = new UUID(0L, 0L);
+    private static final UUID INACTIVE = new UUID(0L, 1L);
+
+    @TempDir
+    Path directory;
+    @TempDir
+    Path backupRoot;
+    @TempDir
+    Path restoredDirectory;
+
+    @ParameterizedTest
+    @EnumSource(value = ConfigData.StorageBackend.class, names = "MEMORY", mode = EnumSource.Mode.EXCLUDE)
+    void restoredBackupMatchesTheLiveServer(ConfigData.StorageBackend backend) throws IOException {
+        Path backupDirectory = backupRoot.resolve("backup");
+        ConfigData config = ConfigData.builder()
+                .storageBackend(backend)
+                .retentionDays(1)
+                .build();
+        long now = System.currentTimeMillis() / 1000L;
+        try (StateStore store = StateStore.create(directory, config)) {
+            Map<UUID, PlayerState> records = new LinkedHashMap<>();
+            records.put(ACTIVE, new PlayerState(5, true, false, 0).withLastSeen(now - 60L));
+            records.put(INACTIVE, new PlayerState(77, true, false, 0).withLastSeen(now - 3L * 86400L));
+            store.write(CONTEXT_ID, records, records.keySet(), true);
+        }
+
+        PlayerState live;
+        try (PlayerStateManager manager = new PlayerStateManager(directory, config)) {
+            assertEquals(1, manager.retireInactivePlayers().getArchived());
+            manager.resetOffWorkUnlocks(CONTEXT_ID);
+            manager.backup(backupDirectory, 0L);
+            // Restores the player from the archive, reset epoch applied.
+            live = manager.findState(CONTEXT_ID, INACTIVE).orElseThrow();
+        }
+        assertFalse(live.canOffWork());
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(backupDirectory)) {
+            for (Path file : files) {
+                Files.copy(file, restoredDirectory.resolve(file.getFileName()));
+            }
+        }
+        try (PlayerStateManager restored = new PlayerStateManager(restoredDirectory, config)) {
+            restored.migrateLegacyContexts(1);
+            assertEquals(live, restored.findState(CONTEXT_ID, INACTIVE).orElseThrow());
+            assertEquals(Optional.of(false), restored.findState(CONTEXT_ID, ACTIVE).map(PlayerState::canOffWork));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.offworklock.player;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import static com.offworklock.player.StateAssertions.assertSameStates;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * The {@link BucketedStateStore} relayout: a context kept as a single legacy file, or with more or
+ * fewer buckets than configured, must load as it is and be rewritten by its next write into
+ * exactly the configured buckets, every player in the bucket its id hashes to.
+ */
+class BucketedStateStoreTest {
+
+    private static final String CONTEXT_ID = "w1";
+    private static final int PLAYERS = 60;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * @param from bucket count the context is stored with, 0 for a legacy single file
+     */
+    @ParameterizedTest
+    @CsvSource({"0, 4", "8, 3", "3, 8"})
+    void nextWriteRelaysOutTheContext(int from, int to) throws IOException {
+        Map<UUID, PlayerState> records = new LinkedHashMap<>();
+        for (int i = 0; i < PLAYERS; i++) {
+            records.put(new UUID(i * 31L, i), new PlayerState(i, i % 3 == 0).withLastSeen(100L + i));
+        }
+        if (from == 0) {
+            Files.writeString(directory.resolve(CONTEXT_ID + ".dat"), PlayerStateCodec.format(CONTEXT_ID, records),
+                    StandardCharsets.UTF_8);
+        } else {
+            new BucketedStateStore(directory, from).write(CONTEXT_ID, records, records.keySet(), true);
+        }
+
+        BucketedStateStore store = new BucketedStateStore(directory, to);
+        assertSameStates(records, store.load(CONTEXT_ID));
+        UUID changed = records.keySet().iterator().next();
+        records.put(changed, new PlayerState(500, true).withLastSeen(900L));
+        store.write(CONTEXT_ID, Map.of(changed, records.get(changed)), Set.of(changed), true);
+
+        assertFalse(Files.exists(directory.resolve(CONTEXT_ID + ".dat")));
+        Set<String> expectedFiles = new TreeSet<>();
+        for (int bucket = 0; bucket < to; bucket++) {
+            expectedFiles.add("bucket-" + bucket + ".dat");
+        }
+        Set<String> files = new TreeSet<>();
+        int placed = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.resolve(CONTEXT_ID))) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                files.add(name);
+                if (!expectedFiles.contains(name)) {
+                    continue;
+                }
+                int bucket = Integer.parseInt(name.substring("bucket-".length(), name.length() - ".dat".length()));
+                Map<UUID, PlayerState> stored = new LinkedHashMap<>();
+                PlayerStateCodec.readInto(file, stored);
+                for (UUID playerId : stored.keySet()) {
+                    assertEquals(bucket, Long.remainderUnsigned(
+                            playerId.getMostSignificantBits() ^ playerId.getLeastSignificantBits(), to), playerId::toString);
+                }
+                placed += stored.size();
+            }
+        }
+        assertEquals(expectedFiles, files);
+        assertEquals(PLAYERS, placed);
+        assertSameStates(records, new BucketedStateStore(directory, to).load(CONTEXT_ID));
+    }
+}
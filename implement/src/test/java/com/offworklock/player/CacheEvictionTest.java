@@ -0,0 +1,64 @@
+package com.offworklock.player;
+
+import com.offworklock.config.ConfigData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The bounded context cache with write-behind persistence: loading a context beyond
+ * {@link ConfigData#getMaxLoadedContexts()} must evict the least recently used one after writing
+ * its unsaved changes, and leave the recently used contexts loaded and unwritten.
+ */
+class CacheEvictionTest {
+
+    private static final UUID PLAYER = new UUID(0L, 1L);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void leastRecentlyUsedContextIsWrittenAndEvicted() throws IOException {
+        ConfigData config = ConfigData.builder()
+                .storageBackend(ConfigData.StorageBackend.TEXT)
+                .persistenceMode(ConfigData.PersistenceMode.WRITE_BEHIND)
+                .flushIntervalSeconds(3600)
+                .maxLoadedContexts(2)
+                .build();
+        try (PlayerStateManager manager = new PlayerStateManager(directory, config)) {
+            manager.updateState("w1", PLAYER, new PlayerState(1, true));
+            manager.updateState("w2", PLAYER, new PlayerState(2, false));
+            // Makes w2 the least recently used context.
+            manager.findState("w1", PLAYER);
+            manager.updateState("w3", PLAYER, new PlayerState(3, false));
+
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                while (manager.getCacheStats().getEvictions() < 1) {
+                    Thread.sleep(10L);
+                }
+            });
+            assertEquals(1, manager.getCacheStats().getEvictions());
+            assertEquals(2, manager.getCacheStats().getLoadedContexts());
+            assertTrue(Files.exists(directory.resolve("w2.dat")));
+            assertFalse(Files.exists(directory.resolve("w1.dat")));
+
+            long misses = manager.getCacheStats().getMisses();
+            assertEquals(Optional.of(2), manager.findState("w2", PLAYER).map(PlayerState::getPoints));
+            assertEquals(misses + 1, manager.getCacheStats().getMisses());
+        }
+        try (PlayerStateManager manager = new PlayerStateManager(directory, config)) {
+            assertEquals(Optional.of(1), manager.findState("w1", PLAYER).map(PlayerState::getPoints));
+        }
+    }
+}
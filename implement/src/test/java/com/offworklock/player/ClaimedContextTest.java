@@ -0,0 +1,154 @@
+package com.offworklock.player;
+
+import com.offworklock.config.ConfigData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reads of a context that is not loaded while a backup or an off-work reset holds its cache entry
+ * without loading it: the store stalls the backup's read of the context, or the reset's write of
+ * its epoch, until the reads have started, and the reads must then see every stored player rather
+ * than the empty placeholder the claim leaves behind.
+ */
+class ClaimedContextTest {
+
+    private static final String CONTEXT_ID = "w1";
+    private static final UUID PLAYER = new UUID(0L, 1L);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsWaitForABackup() throws Exception {
+        StalledStore store = new StalledStore(true);
+        readsWaitFor(store, manager -> manager.backup(directory.resolve("backup"), 0L));
+    }
+
+    @Test
+    void readsWaitForAReset() throws Exception {
+        StalledStore store = new StalledStore(false);
+        readsWaitFor(store, PlayerStateManager::resetAllOffWorkUnlocks);
+    }
+
+    private static void readsWaitFor(StalledStore store, Claim claim) throws Exception {
+        Map<UUID, PlayerState> records = Map.of(PLAYER, new PlayerState(42, false).withLastSeen(1L));
+        store.write(CONTEXT_ID, records, records.keySet(), true);
+
+        ConfigData config = ConfigData.builder().storageBackend(ConfigData.StorageBackend.MEMORY).build();
+        try (PlayerStateManager manager = new PlayerStateManager(store, config)) {
+            CompletableFuture<Void> claimed = CompletableFuture.runAsync(() -> {
+                try {
+                    claim.run(manager);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+            assertTrue(store.entered.await(10, TimeUnit.SECONDS));
+            CompletableFuture<Map<UUID, PlayerState>> snapshot = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return manager.snapshotContext(CONTEXT_ID);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+            CompletableFuture<Optional<PlayerState>> found = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return manager.findState(CONTEXT_ID, PLAYER);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+            // Gives both reads time to start waiting on the claim.
+            Thread.sleep(200L);
+            store.resume.countDown();
+            claimed.get(10, TimeUnit.SECONDS);
+
+            assertEquals(1, snapshot.get(10, TimeUnit.SECONDS).size());
+            assertTrue(found.get(10, TimeUnit.SECONDS).isPresent());
+            assertEquals(Optional.of(42), manager.findState(CONTEXT_ID, PLAYER).map(PlayerState::getPoints));
+        }
+    }
+
+    @FunctionalInterface
+    private interface Claim {
+        void run(PlayerStateManager manager) throws IOException;
+    }
+
+    /**
+     * Memory store whose first load, or first reset epoch write, waits for {@link #resume}.
+     */
+    private static final class StalledStore implements StateStore {
+
+        private final MemoryStateStore delegate = new MemoryStateStore();
+        private final boolean stallLoad;
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch resume = new CountDownLatch(1);
+
+        StalledStore(boolean stallLoad) {
+            this.stallLoad = stallLoad;
+        }
+
+        @Override
+        public Map<UUID, PlayerState> load(String contextId) throws IOException {
+            if (stallLoad) {
+                stall();
+            }
+            return delegate.load(contextId);
+        }
+
+        @Override
+        public void write(String contextId, Map<UUID, PlayerState> records, Set<UUID> changed, boolean force) {
+            delegate.write(contextId, records, changed, force);
+        }
+
+        @Override
+        public boolean supportsResetEpoch() {
+            return true;
+        }
+
+        @Override
+        public long loadResetEpoch(String contextId) {
+            return delegate.loadResetEpoch(contextId);
+        }
+
+        @Override
+        public void writeResetEpoch(String contextId, long resetEpoch) throws IOException {
+            if (!stallLoad) {
+                stall();
+            }
+            delegate.writeResetEpoch(contextId, resetEpoch);
+        }
+
+        @Override
+        public Set<String> listContexts() {
+            return delegate.listContexts();
+        }
+
+        private void stall() throws IOException {
+            if (entered.getCount() == 0) {
+                return;
+            }
+            entered.countDown();
+            try {
+                resume.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while stalled", ex);
+            }
+        }
+    }
+}
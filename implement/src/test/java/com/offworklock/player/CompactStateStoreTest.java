@@ -0,0 +1,71 @@
+package com.offworklock.player;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.offworklock.player.StateAssertions.assertSameStates;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The {@link CompactStateStore} file format: every field must round-trip at its extremes, legacy
+ * text snapshots must be read and converted, and files with a foreign magic or an unknown version
+ * must be refused rather than misread.
+ */
+class CompactStateStoreTest {
+
+    private static final String CONTEXT_ID = "w1";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void fieldsRoundTrip() throws IOException {
+        Map<UUID, PlayerState> records = new LinkedHashMap<>();
+        records.put(new UUID(0L, 1L), new PlayerState(0, false));
+        records.put(new UUID(-1L, -1L), new PlayerState(Integer.MIN_VALUE, true, true,
+                PackedPlayerState.MAX_FORCED_EXIT_COUNT).withLastSeen(0xFFFF_FFFFL));
+        records.put(new UUID(Long.MIN_VALUE, Long.MAX_VALUE), new PlayerState(Integer.MAX_VALUE, false, true, 1)
+                .withLastSeen(1L << 31));
+        records.put(new UUID(5L, 6L), new PlayerState(-1, true, false, 300).withLastSeen(1_700_000_000L));
+        CompactStateStore store = new CompactStateStore(directory);
+        store.write(CONTEXT_ID, records, records.keySet(), true);
+        assertEquals(1, Files.readAllBytes(directory.resolve(CONTEXT_ID + ".datz"))[4]);
+        assertSameStates(records, store.load(CONTEXT_ID));
+    }
+
+    @Test
+    void legacySnapshotIsConverted() throws IOException {
+        Map<UUID, PlayerState> records = new LinkedHashMap<>();
+        records.put(new UUID(1L, 2L), new PlayerState(-40, true, false, 3));
+        records.put(new UUID(3L, 4L), new PlayerState(1 << 20, false, true, 9));
+        Files.writeString(directory.resolve(CONTEXT_ID + ".dat"), PlayerStateCodec.format(CONTEXT_ID, records),
+                StandardCharsets.UTF_8);
+        CompactStateStore store = new CompactStateStore(directory);
+        assertSameStates(records, store.load(CONTEXT_ID));
+        assertTrue(store.importLegacy(CONTEXT_ID));
+        assertFalse(store.importLegacy(CONTEXT_ID));
+        Files.delete(directory.resolve(CONTEXT_ID + ".dat"));
+        assertSameStates(records, store.load(CONTEXT_ID));
+    }
+
+    @Test
+    void unknownHeaderIsRefused() throws IOException {
+        CompactStateStore store = new CompactStateStore(directory);
+        Path file = directory.resolve(CONTEXT_ID + ".datz");
+        Files.write(file, new byte[]{'O', 'W', 'L', 'Z', 2, 0});
+        assertThrows(IOException.class, () -> store.load(CONTEXT_ID));
+        Files.write(file, new byte[]{'O', 'W', 'L', 'B', 1, 0});
+        assertThrows(IOException.class, () -> store.load(CONTEXT_ID));
+    }
+}
@@ -0,0 +1,55 @@
+package com.offworklock.player;
+
+import com.offworklock.config.ConfigData;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Snapshot isolation: a map returned by {@link PlayerStateManager#snapshotContext(String)} must
+ * keep the contents it had when it was taken while the context goes on changing underneath it,
+ * and a snapshot taken afterwards must show every change.
+ */
+class ContextSnapshotTest {
+
+    private static final String CONTEXT_ID = "w1";
+    private static final int PLAYERS = 100;
+
+    @Test
+    void snapshotKeepsItsContents() throws IOException {
+        ConfigData config = ConfigData.builder().storageBackend(ConfigData.StorageBackend.MEMORY).build();
+        try (PlayerStateManager manager = new PlayerStateManager(new MemoryStateStore(), config)) {
+            for (int i = 0; i < PLAYERS; i++) {
+                manager.updateState(CONTEXT_ID, player(i), new PlayerState(i, true));
+            }
+            Map<UUID, PlayerState> snapshot = manager.snapshotContext(CONTEXT_ID);
+            Map<UUID, PlayerState> expected = new HashMap<>(snapshot);
+            assertEquals(PLAYERS, snapshot.size());
+
+            for (int i = 0; i < PLAYERS; i += 2) {
+                manager.update(CONTEXT_ID, player(i), state -> state.withPoints(state.getPoints() + 1000));
+            }
+            manager.updatePacked(CONTEXT_ID, player(1), packed -> PackedPlayerState.withForcedExitCount(packed, 5));
+            for (int i = PLAYERS; i < PLAYERS * 3; i++) {
+                // Grows the context past the snapshot's size.
+                manager.updateState(CONTEXT_ID, player(i), new PlayerState(i, false));
+            }
+
+            assertEquals(expected, snapshot);
+            assertEquals(expected, new HashMap<>(snapshot));
+            Map<UUID, PlayerState> later = manager.snapshotContext(CONTEXT_ID);
+            assertEquals(PLAYERS * 3, later.size());
+            assertEquals(1000, later.get(player(0)).getPoints());
+            assertEquals(5, later.get(player(1)).getForcedExitCount());
+        }
+    }
+
+    private static UUID player(int index) {
+        return new UUID(1L, index);
+    }
+}
@@ -0,0 +1,69 @@
+package com.offworklock.player;
+
+import com.offworklock.config.ConfigData;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Per-operation durability levels: by the time an update returns, {@code ASYNC} must not have
+ * written, {@code SYNC} and {@code GROUP_COMMIT} must have forced a write holding the change and
+ * every change of the context still waiting, and {@code DEFAULT} must do what the persistence
+ * mode does.
+ */
+class DurabilityTest {
+
+    private static final String CONTEXT_ID = "w1";
+    private static final UUID FIRST = new UUID(0L, 1L);
+    private static final UUID SECOND = new UUID(0L, 2L);
+    private static final UUID THIRD = new UUID(0L, 3L);
+
+    @Test
+    void writeBehind() throws IOException {
+        RecordingStateStore store = new RecordingStateStore();
+        try (PlayerStateManager manager = new PlayerStateManager(store, config(ConfigData.PersistenceMode.WRITE_BEHIND))) {
+            ContextHandle handle = manager.resolveContext(CONTEXT_ID);
+            manager.update(handle, FIRST, state -> state.withPoints(1), ConfigData.Durability.ASYNC);
+            manager.update(handle, FIRST, state -> state.withPoints(2), ConfigData.Durability.DEFAULT);
+            assertEquals(List.of(), store.writes());
+
+            manager.update(handle, SECOND, state -> state.withPoints(1), ConfigData.Durability.SYNC);
+            assertEquals(List.of("forced " + FIRST + " " + SECOND), store.writes());
+
+            manager.update(handle, THIRD, state -> state.withPoints(1), ConfigData.Durability.GROUP_COMMIT);
+            assertEquals(List.of("forced " + FIRST + " " + SECOND, "forced " + THIRD), store.writes());
+        }
+    }
+
+    /**
+     * A forced write must also cover players an earlier unforced write took.
+     */
+    @Test
+    void immediate() throws IOException {
+        RecordingStateStore store = new RecordingStateStore();
+        try (PlayerStateManager manager = new PlayerStateManager(store, config(ConfigData.PersistenceMode.IMMEDIATE))) {
+            ContextHandle handle = manager.resolveContext(CONTEXT_ID);
+            manager.update(handle, FIRST, state -> state.withPoints(1), ConfigData.Durability.DEFAULT);
+            assertEquals(List.of("unforced " + FIRST), store.writes());
+
+            manager.update(handle, SECOND, state -> state.withPoints(1), ConfigData.Durability.ASYNC);
+            assertEquals(List.of("unforced " + FIRST), store.writes());
+
+            manager.update(handle, THIRD, state -> state.withPoints(1), ConfigData.Durability.SYNC);
+            assertEquals(List.of("unforced " + FIRST, "forced " + FIRST + " " + SECOND + " " + THIRD), store.writes());
+        }
+    }
+
+    private static ConfigData config(ConfigData.PersistenceMode mode) {
+        return ConfigData.builder()
+                .storageBackend(ConfigData.StorageBackend.MEMORY)
+                .persistenceMode(mode)
+                .flushIntervalSeconds(3600)
+                .groupCommitWindowMillis(1)
+                .build();
+    }
+}
@@ -0,0 +1,101 @@
+package com.offworklock.player;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Recovery of {@link JournalStateStore} from crashes: a journal whose last line was torn must
+ * replay without it, and a compaction interrupted after the rotation must be finished by
+ * replaying snapshot, rotated and live journal in that order.
+ */
+class JournalStateStoreTest {
+
+    private static final String CONTEXT_ID = "w1";
+    private static final UUID FIRST = new UUID(0L, 1L);
+    private static final UUID SECOND = new UUID(0L, 2L);
+    private static final UUID THIRD = new UUID(0L, 3L);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void tornTailIsCutOff() throws IOException {
+        try (JournalStateStore store = new JournalStateStore(directory, 1000)) {
+            write(store, FIRST, new PlayerState(1, true));
+            write(store, SECOND, new PlayerState(2, false));
+        }
+        // What a crash in the middle of the next append leaves behind.
+        Files.writeString(directory.resolve(CONTEXT_ID + ".journal"), THIRD + ",3,tr",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (JournalStateStore store = new JournalStateStore(directory, 1000)) {
+            assertEquals(Map.of(FIRST, new PlayerState(1, true), SECOND, new PlayerState(2, false)),
+                    store.load(CONTEXT_ID));
+            write(store, SECOND, new PlayerState(5, true));
+        }
+        try (JournalStateStore store = new JournalStateStore(directory, 1000)) {
+            assertEquals(Map.of(FIRST, new PlayerState(1, true), SECOND, new PlayerState(5, true)),
+                    store.load(CONTEXT_ID));
+        }
+    }
+
+    @Test
+    void interruptedCompactionIsFinished() throws IOException {
+        StringBuilder snapshot = new StringBuilder();
+        PlayerStateCodec.appendLine(snapshot, FIRST, new PlayerState(1, false));
+        PlayerStateCodec.appendLine(snapshot, SECOND, new PlayerState(1, false));
+        PlayerStateCodec.appendLine(snapshot, THIRD, new PlayerState(1, false));
+        Files.writeString(directory.resolve(CONTEXT_ID + ".dat"), snapshot, StandardCharsets.UTF_8);
+        StringBuilder rotated = new StringBuilder();
+        PlayerStateCodec.appendLine(rotated, FIRST, new PlayerState(2, false));
+        PlayerStateCodec.appendLine(rotated, SECOND, new PlayerState(2, false));
+        PlayerStateCodec.appendRemoval(rotated, THIRD);
+        Files.writeString(directory.resolve(CONTEXT_ID + ".journal.compacting"), rotated, StandardCharsets.UTF_8);
+        StringBuilder live = new StringBuilder();
+        PlayerStateCodec.appendLine(live, SECOND, new PlayerState(3, true));
+        Files.writeString(directory.resolve(CONTEXT_ID + ".journal"), live, StandardCharsets.UTF_8);
+        Map<UUID, PlayerState> replayed = Map.of(FIRST, new PlayerState(2, false), SECOND, new PlayerState(3, true));
+
+        try (JournalStateStore store = new JournalStateStore(directory, 1)) {
+            assertEquals(replayed, store.load(CONTEXT_ID));
+            // Reaches the threshold; the compaction appends the live journal to the leftover
+            // rotated one and merges both into the snapshot. Closing waits for it.
+            write(store, FIRST, new PlayerState(2, false));
+        }
+        assertFalse(Files.exists(directory.resolve(CONTEXT_ID + ".journal.compacting")));
+        assertFalse(Files.exists(directory.resolve(CONTEXT_ID + ".journal")));
+        try (JournalStateStore store = new JournalStateStore(directory, 1000)) {
+            assertEquals(replayed, store.load(CONTEXT_ID));
+        }
+    }
+
+    @Test
+    void failedCompactionIsReported() throws IOException {
+        List<IOException> failures = new ArrayList<>();
+        try (JournalStateStore store = new JournalStateStore(directory, 1)) {
+            store.setBackgroundFailureHandler(failures::add);
+            store.load(CONTEXT_ID);
+            // The compaction cannot read a snapshot that is a directory.
+            Files.createDirectory(directory.resolve(CONTEXT_ID + ".dat"));
+            write(store, FIRST, new PlayerState(1, true));
+        }
+        assertEquals(1, failures.size());
+    }
+
+    private static void write(StateStore store, UUID playerId, PlayerState state) throws IOException {
+        store.write(CONTEXT_ID, Map.of(playerId, state), Map.of(playerId, state).keySet(), true);
+    }
+}
@@ -0,0 +1,83 @@
+package com.offworklock.player;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.offworklock.player.StateAssertions.assertSameStates;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Record checksums of {@link MappedStateStore}: a record caught halfway through an update, and an
+ * appended record that never reached the disk while the count covering it did, must be dropped on
+ * the next open with the corrected count written back, while every intact player is kept.
+ */
+class MappedStateStoreTest {
+
+    private static final String CONTEXT_ID = "w1";
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 32;
+    private static final int COUNT_OFFSET = 8;
+    private static final int PLAYERS = 4;
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void damagedRecordIsDropped(boolean torn) throws IOException {
+        Map<UUID, PlayerState> records = new LinkedHashMap<>();
+        for (int i = 0; i < PLAYERS; i++) {
+            records.put(player(i), new PlayerState(10 + i, i % 2 == 0, false, i).withLastSeen(1000L + i));
+        }
+        try (MappedStateStore store = new MappedStateStore(directory)) {
+            store.write(CONTEXT_ID, records, records.keySet(), true);
+        }
+
+        Path file = directory.resolve(CONTEXT_ID + ".bin");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (torn) {
+                // The points of the second record changed, its checksum not yet.
+                channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, 99), HEADER_SIZE + RECORD_SIZE + 16L);
+                records.remove(player(1));
+            } else {
+                // The count covers a record that is still zero-filled.
+                channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, PLAYERS + 1), COUNT_OFFSET);
+            }
+        }
+
+        try (MappedStateStore store = new MappedStateStore(directory)) {
+            assertSameStates(records, store.load(CONTEXT_ID));
+        }
+        assertEquals(records.size(), readCount(file));
+        try (MappedStateStore store = new MappedStateStore(directory)) {
+            Map<UUID, PlayerState> added = Map.of(player(PLAYERS), new PlayerState(7, true).withLastSeen(2000L));
+            store.write(CONTEXT_ID, added, added.keySet(), true);
+            records.putAll(added);
+        }
+        try (MappedStateStore store = new MappedStateStore(directory)) {
+            assertSameStates(records, store.load(CONTEXT_ID));
+        }
+    }
+
+    private static int readCount(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer count = ByteBuffer.allocate(Integer.BYTES);
+            channel.read(count, COUNT_OFFSET);
+            return count.getInt(0);
+        }
+    }
+
+    private static UUID player(int index) {
+        return new UUID(1L, index);
+    }
+}
@@ -0,0 +1,70 @@
+package com.offworklock.player;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * The {@link PackedPlayerState} bit layout: each field must sit in its documented bits and leave
+ * the others alone when changed, and the forced exit count must saturate instead of spilling into
+ * the flags.
+ */
+class PackedPlayerStateTest {
+
+    @Test
+    void fieldsSitInTheirBits() {
+        assertEquals(PackedPlayerState.EMPTY, PackedPlayerState.pack(0, false, false, 0));
+        assertEquals(0xFFFF_FFFFL, PackedPlayerState.pack(-1, false, false, 0));
+        assertEquals(1L << 32, PackedPlayerState.pack(0, false, false, 1));
+        assertEquals(1L << 62, PackedPlayerState.pack(0, true, false, 0));
+        assertEquals(1L << 63, PackedPlayerState.pack(0, false, true, 0));
+        assertEquals(-1L, PackedPlayerState.pack(-1, true, true, PackedPlayerState.MAX_FORCED_EXIT_COUNT));
+        assertEquals(0L, PlayerState.fromPacked(PackedPlayerState.EMPTY).toPacked());
+    }
+
+    @Test
+    void forcedExitCountSaturates() {
+        assertEquals((1 << 30) - 1, PackedPlayerState.MAX_FORCED_EXIT_COUNT);
+        long full = PackedPlayerState.withForcedExitCount(PackedPlayerState.EMPTY, PackedPlayerState.MAX_FORCED_EXIT_COUNT);
+        assertEquals(PackedPlayerState.MAX_FORCED_EXIT_COUNT, PackedPlayerState.forcedExitCount(full));
+        assertEquals(full, PackedPlayerState.withForcedExitCount(PackedPlayerState.EMPTY, PackedPlayerState.MAX_FORCED_EXIT_COUNT + 1));
+        long highest = PackedPlayerState.withForcedExitCount(PackedPlayerState.EMPTY, Integer.MAX_VALUE);
+        assertEquals(full, highest);
+        assertFalse(PackedPlayerState.canOffWork(highest) || PackedPlayerState.isSessionOpen(highest));
+        assertEquals(PackedPlayerState.EMPTY, PackedPlayerState.withForcedExitCount(full, -5));
+        PlayerState state = new PlayerState(0, false).withForcedExitCount(PackedPlayerState.MAX_FORCED_EXIT_COUNT);
+        assertEquals(PackedPlayerState.MAX_FORCED_EXIT_COUNT,
+                state.withForcedExitCount(state.getForcedExitCount() + 1).getForcedExitCount());
+    }
+
+    @Test
+    void changingAFieldKeepsTheOthers() {
+        int[] points = {0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE, 123456};
+        int[] counts = {0, 1, 7, PackedPlayerState.MAX_FORCED_EXIT_COUNT};
+        for (int point : points) {
+            for (int count : counts) {
+                for (int flags = 0; flags < 4; flags++) {
+                    boolean canOffWork = (flags & 1) != 0;
+                    boolean sessionOpen = (flags & 2) != 0;
+                    long packed = PackedPlayerState.pack(point, canOffWork, sessionOpen, count);
+                    String what = point + "/" + count + "/" + canOffWork + "/" + sessionOpen;
+                    assertEquals(point, PackedPlayerState.points(packed), what);
+                    assertEquals(count, PackedPlayerState.forcedExitCount(packed), what);
+                    assertEquals(canOffWork, PackedPlayerState.canOffWork(packed), what);
+                    assertEquals(sessionOpen, PackedPlayerState.isSessionOpen(packed), what);
+
+                    assertEquals(PackedPlayerState.pack(~point, canOffWork, sessionOpen, count),
+                            PackedPlayerState.withPoints(packed, ~point), what);
+                    assertEquals(PackedPlayerState.pack(point, canOffWork, sessionOpen, count ^ 1),
+                            PackedPlayerState.withForcedExitCount(packed, count ^ 1), what);
+                    assertEquals(PackedPlayerState.pack(point, !canOffWork, sessionOpen, count),
+                            PackedPlayerState.withOffWork(packed, !canOffWork), what);
+                    assertEquals(PackedPlayerState.pack(point, canOffWork, !sessionOpen, count),
+                            PackedPlayerState.withSessionOpen(packed, !sessionOpen), what);
+                    assertEquals(packed, new PlayerState(point, canOffWork, sessionOpen, count).toPacked(), what);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.offworklock.player;
+
+import com.offworklock.config.ConfigData;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The secondary indexes behind {@link PlayerStateManager#findOffWorkUnlocked},
+ * {@link PlayerStateManager#findByForcedExits} and {@link PlayerStateManager#findByPoints}: after
+ * every step of a random run of updates, packed updates and off-work resets, each lookup must
+ * return exactly what a scan of the context finds.
+ */
+class PlayerStateIndexTest {
+
+    private static final String CONTEXT_ID = "w1";
+    private static final int PLAYERS = 64;
+    private static final int OPERATIONS = 3000;
+
+    @Test
+    void lookupsMatchAScanWithResetEpochs() throws IOException {
+        run(new MemoryStateStore());
+    }
+
+    /**
+     * Without reset epochs in the store, resets revoke unlocks one player at a time.
+     */
+    @Test
+    void lookupsMatchAScanWithoutResetEpochs() throws IOException {
+        run(new RecordingStateStore());
+    }
+
+    private static void run(StateStore store) throws IOException {
+        ConfigData config = ConfigData.builder().storageBackend(ConfigData.StorageBackend.MEMORY).build();
+        Random random = new Random(11L);
+        try (PlayerStateManager manager = new PlayerStateManager(store, config)) {
+            ContextHandle handle = manager.resolveContext(CONTEXT_ID);
+            for (int i = 0; i < OPERATIONS; i++) {
+                UUID playerId = new UUID(0L, random.nextInt(PLAYERS));
+                int value = random.nextInt(20);
+                switch (random.nextInt(8)) {
+                    case 0 -> manager.resetOffWorkUnlocks(handle);
+                    case 1, 2 -> manager.update(handle, playerId, state -> state.withOffWork(true));
+                    case 3, 4 -> manager.update(handle, playerId, state -> state.withPoints(value));
+                    case 5 -> manager.updatePacked(handle, playerId,
+                            packed -> PackedPlayerState.withForcedExitCount(packed, value));
+                    default -> manager.updatePacked(handle, playerId, packed -> PackedPlayerState.withOffWork(
+                            PackedPlayerState.withPoints(packed, PackedPlayerState.points(packed) + 1),
+                            !PackedPlayerState.canOffWork(packed)));
+                }
+                if (i == 0) {
+                    // Builds the indexes, so that every later step has to keep them current.
+                    manager.findOffWorkUnlocked(handle);
+                }
+                assertLookupsMatchScan(manager, handle, value);
+            }
+        }
+    }
+
+    private static void assertLookupsMatchScan(PlayerStateManager manager, ContextHandle handle, int value)
+            throws IOException {
+        Map<UUID, PlayerState> states = manager.snapshotContext(handle);
+        Set<UUID> unlocked = new TreeSet<>();
+        Set<UUID> forcedExits = new TreeSet<>();
+        Set<UUID> points = new TreeSet<>();
+        for (Map.Entry<UUID, PlayerState> entry : states.entrySet()) {
+            PlayerState state = entry.getValue();
+            if (state.canOffWork()) {
+                unlocked.add(entry.getKey());
+            }
+            // Forced exit lookups start at 1, as documented.
+            if (state.getForcedExitCount() >= Math.max(1, value)) {
+                forcedExits.add(entry.getKey());
+            }
+            if (state.getPoints() >= value && state.getPoints() <= value + 5) {
+                points.add(entry.getKey());
+            }
+        }
+        assertFound(unlocked, manager.findOffWorkUnlocked(handle), states);
+        assertFound(forcedExits, manager.findByForcedExits(handle, value), states);
+        assertFound(points, manager.findByPoints(handle, value, value + 5), states);
+    }
+
+    private static void assertFound(Set<UUID> expected, Map<UUID, PlayerState> found, Map<UUID, PlayerState> states) {
+        assertEquals(expected, new TreeSet<>(found.keySet()));
+        for (Map.Entry<UUID, PlayerState> entry : found.entrySet()) {
+            assertEquals(states.get(entry.getKey()), entry.getValue());
+        }
+    }
+}
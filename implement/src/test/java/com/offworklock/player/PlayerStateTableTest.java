@@ -0,0 +1,118 @@
+package com.offworklock.player;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.offworklock.player.StateAssertions.assertSameStates;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link PlayerStateTable} and its open-addressing index: a long random run with ids chosen to
+ * collide must match a plain map across growth and backward-shift deletes, snapshots must keep
+ * their contents, and lock-free reads must never miss or misread a player while another thread
+ * keeps growing and shrinking the table.
+ */
+class PlayerStateTableTest {
+
+    private static final int OPERATIONS = 200_000;
+
+    @Test
+    void matchesAMapThroughRandomOperations() {
+        Random random = new Random(42L);
+        PlayerStateTable table = new PlayerStateTable(0);
+        Map<UUID, PlayerState> expected = new HashMap<>();
+        List<Map<UUID, PlayerState>> snapshots = new ArrayList<>();
+        List<Map<UUID, PlayerState>> snapshotContents = new ArrayList<>();
+        for (int i = 0; i < OPERATIONS; i++) {
+            UUID playerId = player(random.nextInt(4096));
+            // Drifts between growing and shrinking, so the table passes every size several times.
+            boolean growing = (i / 20_000) % 2 == 0;
+            if (random.nextInt(10) < (growing ? 7 : 3)) {
+                PlayerState state = new PlayerState(random.nextInt(), random.nextBoolean()).withLastSeen(i);
+                table.put(playerId, state);
+                expected.put(playerId, state);
+            } else {
+                assertEquals(expected.remove(playerId) != null, table.remove(playerId));
+            }
+            assertEquals(expected.size(), table.size());
+            assertEquals(String.valueOf(expected.get(playerId)), String.valueOf(table.get(playerId)));
+            if (i % 10_000 == 0) {
+                snapshots.add(table.snapshot());
+                snapshotContents.add(new HashMap<>(expected));
+            }
+        }
+        for (UUID playerId : expected.keySet()) {
+            assertTrue(table.rowOf(playerId) >= 0);
+        }
+        for (int id = 0; id < 4096; id++) {
+            if (!expected.containsKey(player(id))) {
+                assertNull(table.get(player(id)));
+                assertTrue(table.rowOf(player(id)) < 0);
+            }
+        }
+        assertSameStates(expected, table.snapshot());
+        for (int i = 0; i < snapshots.size(); i++) {
+            assertSameStates(snapshotContents.get(i), snapshots.get(i));
+        }
+    }
+
+    @Test
+    void lockFreeReadsSeeEveryPlayer() throws InterruptedException {
+        PlayerStateTable table = new PlayerStateTable(0);
+        int stable = 256;
+        for (int id = 0; id < stable; id++) {
+            table.put(player(id), new PlayerState(id, true).withLastSeen(id));
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int reader = 0; reader < 3; reader++) {
+            Random random = new Random(reader);
+            Thread thread = new Thread(() -> {
+                while (!done.get() && failure.get() == null) {
+                    int id = random.nextInt(stable);
+                    PlayerState state = table.get(player(id));
+                    if (state == null || state.getPoints() != id || state.getLastSeen() != id) {
+                        failure.compareAndSet(null, "read " + player(id) + " as " + state);
+                    }
+                    if (table.get(player(1_000_000 + id)) != null) {
+                        failure.compareAndSet(null, "found a player never added");
+                    }
+                }
+            });
+            thread.start();
+            readers.add(thread);
+        }
+        Random random = new Random(7L);
+        for (int round = 0; round < 200 && failure.get() == null; round++) {
+            for (int i = 0; i < 2000; i++) {
+                table.put(player(stable + random.nextInt(50_000)), new PlayerState(-1, false));
+            }
+            for (int id = stable; id < stable + 50_000; id++) {
+                table.remove(player(id));
+            }
+        }
+        done.set(true);
+        for (Thread thread : readers) {
+            thread.join();
+        }
+        assertNull(failure.get());
+    }
+
+    /**
+     * Ids that differ in few bits, so many of them hash close together in the index.
+     */
+    private static UUID player(int id) {
+        return new UUID(id & 3, id >>> 2);
+    }
+}
@@ -0,0 +1,47 @@
+package com.offworklock.player;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Keeps contexts in memory and records every write as whether it was forced followed by the
+ * changed players in id order. Keeps no reset epochs, so resets revoke unlocks player by player.
+ */
+final class RecordingStateStore implements StateStore {
+
+    private final StateStore delegate = new MemoryStateStore();
+    private final List<String> writes = new ArrayList<>();
+
+    @Override
+    public Map<UUID, PlayerState> load(String contextId) throws IOException {
+        return delegate.load(contextId);
+    }
+
+    @Override
+    public void write(String contextId, Map<UUID, PlayerState> records, Set<UUID> changed, boolean force) throws IOException {
+        delegate.write(contextId, records, changed, force);
+        StringBuilder write = new StringBuilder(force ? "forced" : "unforced");
+        for (UUID playerId : new TreeSet<>(changed)) {
+            write.append(' ').append(playerId);
+        }
+        synchronized (writes) {
+            writes.add(write.toString());
+        }
+    }
+
+    @Override
+    public Set<String> listContexts() throws IOException {
+        return delegate.listContexts();
+    }
+
+    List<String> writes() {
+        synchronized (writes) {
+            return List.copyOf(writes);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.offworklock.player;
+
+import com.offworklock.config.ConfigData;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static com.offworklock.player.StateAssertions.assertSameStates;
+import static com.offworklock.player.StateAssertions.sameStates;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Replication between a {@link ReplicationPrimary} and a {@link ReplicationStandby} over
+ * loopback, for each disk backend with immediate and group-commit persistence: the initial copy,
+ * live changes from concurrent updates, retention and off-work resets, a standby restart while
+ * the primary keeps writing, and promotion, after which the standby's data directory must hold
+ * what the primary had.
+ */
+class ReplicationTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(20);
+    private static final String[] CONTEXTS = {"w1", "w2", "w3", "w4", "w5"};
+    private static final UUID INACTIVE = new UUID(0L, 1L);
+
+    @TempDir
+    Path primaryDirectory;
+    @TempDir
+    Path standbyDirectory;
+
+    static Stream<Arguments> backendsAndModes() {
+        List<Arguments> arguments = new ArrayList<>();
+        for (ConfigData.StorageBackend backend : ConfigData.StorageBackend.values()) {
+            if (backend != ConfigData.StorageBackend.MEMORY) {
+                arguments.add(Arguments.of(backend, ConfigData.PersistenceMode.IMMEDIATE));
+                arguments.add(Arguments.of(backend, ConfigData.PersistenceMode.GROUP_COMMIT));
+            }
+        }
+        return arguments.stream();
+    }
+
+    @ParameterizedTest
+    @MethodSource("backendsAndModes")
+    void standbyFollowsThePrimary(ConfigData.StorageBackend backend, ConfigData.PersistenceMode mode)
+            throws Exception {
+        ConfigData config = ConfigData.builder()
+                .storageBackend(backend)
+                .persistenceMode(mode)
+                .groupCommitWindowMillis(2)
+                .retentionDays(1)
+                .maxLoadedContexts(3)
+                .build();
+        seed(config, System.currentTimeMillis() / 1000L);
+
+        PlayerStateManager primary = new PlayerStateManager(primaryDirectory, config);
+        PlayerStateManager standbyManager = new PlayerStateManager(standbyDirectory, config);
+        ReplicationStandby standby = new ReplicationStandby(standbyManager, new InetSocketAddress("127.0.0.1", 0));
+        int port = standby.getLocalPort();
+        ReplicationPrimary replication = new ReplicationPrimary(primary, new InetSocketAddress("127.0.0.1", port));
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        try {
+            await(() -> same(primary, standbyManager, "w1", "w2"));
+
+            List<UUID> players = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                players.add(new UUID(1L, i));
+            }
+            List<Future<?>> updates = new ArrayList<>();
+            for (int writer = 0; writer < 4; writer++) {
+                Random random = new Random(writer);
+                updates.add(writers.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        primary.update(CONTEXTS[random.nextInt(CONTEXTS.length)],
+                                players.get(random.nextInt(players.size())),
+                                state -> state.withPoints(state.getPoints() + 1).withOffWork(true));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> update : updates) {
+                update.get();
+            }
+            primary.flush();
+            await(() -> replication.getPendingFrames() == 0 && same(primary, standbyManager, CONTEXTS));
+
+            assertEquals(1, primary.retireInactivePlayers().getArchived());
+            primary.resetOffWorkUnlocks("w3");
+            await(() -> same(primary, standbyManager, CONTEXTS));
+
+            standby.close();
+            // Without writing anything, which could let a vanished standby go unnoticed.
+            await(() -> !replication.isConnected());
+            for (int i = 0; i < 300; i++) {
+                primary.update(CONTEXTS[i % CONTEXTS.length], players.get(i % players.size()),
+                        state -> state.withPoints(state.getPoints() + 1000));
+            }
+            standby = new ReplicationStandby(standbyManager, new InetSocketAddress("127.0.0.1", port));
+            for (int i = 0; i < 300; i++) {
+                primary.update(CONTEXTS[i % CONTEXTS.length], players.get(i % players.size()),
+                        state -> state.withPoints(state.getPoints() + 1));
+            }
+            await(() -> replication.getPendingFrames() == 0 && same(primary, standbyManager, CONTEXTS));
+
+            Map<String, Map<UUID, PlayerState>> expected = new HashMap<>();
+            for (String contextId : CONTEXTS) {
+                expected.put(contextId, new HashMap<>(primary.snapshotContext(contextId)));
+            }
+            replication.close();
+            primary.close();
+            try (PlayerStateManager promoted = standby.promote()) {
+                for (String contextId : CONTEXTS) {
+                    assertSameStates(expected.get(contextId), promoted.snapshotContext(contextId));
+                }
+                assertEquals(77, promoted.findState("w1", INACTIVE).map(PlayerState::getPoints).orElse(-1));
+            }
+
+            try (PlayerStateManager reopened = new PlayerStateManager(standbyDirectory, config)) {
+                for (String contextId : CONTEXTS) {
+                    Map<UUID, PlayerState> stored = new HashMap<>(reopened.snapshotContext(contextId));
+                    // Restored into the context by the lookup above.
+                    stored.remove(INACTIVE);
+                    assertSameStates(expected.get(contextId), stored);
+                }
+            }
+        } finally {
+            writers.shutdownNow();
+            standby.close();
+            replication.close();
+            primary.close();
+        }
+    }
+
+    private void seed(ConfigData config, long now) throws IOException {
+        try (StateStore store = StateStore.create(primaryDirectory, config)) {
+            Map<UUID, PlayerState> records = new LinkedHashMap<>();
+            for (int i = 0; i < 200; i++) {
+                records.put(new UUID(2L, i), new PlayerState(i, i % 2 == 0, false, 0).withLastSeen(now));
+            }
+            records.put(INACTIVE, new PlayerState(77, true, false, 0).withLastSeen(now - 3L * 86400L));
+            store.write("w1", records, records.keySet(), true);
+            Map<UUID, PlayerState> other = Map.of(new UUID(3L, 0L), new PlayerState(1, false).withLastSeen(now));
+            store.write("w2", other, Set.copyOf(other.keySet()), true);
+        }
+    }
+
+    private static boolean same(PlayerStateManager primary, PlayerStateManager standby, String... contextIds) {
+        try {
+            for (String contextId : contextIds) {
+                if (!sameStates(primary.snapshotContext(contextId), standby.snapshotContext(contextId))) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    private static void await(BooleanSupplier condition) {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            while (!condition.getAsBoolean()) {
+                Thread.sleep(20L);
+            }
+        }, "standby did not converge");
+    }
+}
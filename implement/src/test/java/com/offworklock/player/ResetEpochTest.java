@@ -0,0 +1,135 @@
+package com.offworklock.player;
+
+import com.offworklock.config.ConfigData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Off-work reset epochs: an unlock must be revoked exactly when the player was last seen before
+ * the epoch, comparing both as unsigned seconds, and through the manager an unlock granted after
+ * a reset must survive it while every epoch outlives a restart.
+ */
+class ResetEpochTest {
+
+    private static final String CONTEXT_ID = "w1";
+    private static final UUID FIRST = new UUID(0L, 1L);
+    private static final UUID SECOND = new UUID(0L, 2L);
+    private static final UUID THIRD = new UUID(0L, 3L);
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Past 2038, 2147483653 and the seconds around it no longer fit a signed int.
+     */
+    @ParameterizedTest
+    @CsvSource({
+            "1700000000, 1699999999, false",
+            "1700000000, 1700000000, true",
+            "1700000000, 0, false",
+            "0, 0, true",
+            "2147483653, 2147483658, true",
+            "2147483653, 2147483647, false",
+            "1700000000, 2147483653, true",
+            "4294967295, 4294967295, true"
+    })
+    void unlockIsRevokedWhenLastSeenBeforeTheEpoch(long resetEpoch, long lastSeen, boolean kept) {
+        PlayerState state = new PlayerState(7, true).withLastSeen(lastSeen);
+        PlayerStateTable table = new PlayerStateTable(0);
+        table.put(FIRST, state);
+        table.setResetEpoch(resetEpoch);
+        assertEquals(kept, table.get(FIRST).canOffWork());
+        assertEquals(kept, table.snapshot().get(FIRST).canOffWork());
+        assertEquals(kept, PackedPlayerState.canOffWork(table.packedAt(table.rowOf(FIRST))));
+        assertEquals(kept, PlayerStateTable.reconcile(state, resetEpoch).canOffWork());
+        assertEquals(lastSeen, table.get(FIRST).getLastSeen());
+        assertEquals(7, table.get(FIRST).getPoints());
+    }
+
+    @Test
+    void epochNeverMovesBack() {
+        long epoch = 1_700_000_000L;
+        PlayerStateTable table = new PlayerStateTable(0);
+        table.put(FIRST, new PlayerState(1, true).withLastSeen(epoch));
+        table.setResetEpoch(epoch + 10);
+        table.setResetEpoch(epoch);
+        assertEquals(epoch + 10, table.getResetEpoch());
+        assertFalse(table.get(FIRST).canOffWork());
+    }
+
+    @Test
+    void resetsRevokeEarlierUnlocksOnly() throws IOException {
+        MemoryStateStore store = new MemoryStateStore();
+        ConfigData config = ConfigData.builder().storageBackend(ConfigData.StorageBackend.MEMORY).build();
+        try (PlayerStateManager manager = new PlayerStateManager(store, config)) {
+            manager.update(CONTEXT_ID, FIRST, state -> state.withOffWork(true));
+            manager.resetOffWorkUnlocks(CONTEXT_ID);
+            assertUnlocked(manager, false, null, null);
+            long firstEpoch = store.loadResetEpoch(CONTEXT_ID);
+
+            manager.update(CONTEXT_ID, SECOND, state -> state.withOffWork(true));
+            assertUnlocked(manager, false, true, null);
+            // Within the same second as the unlock, which must still be revoked.
+            manager.resetOffWorkUnlocks(CONTEXT_ID);
+            assertTrue(store.loadResetEpoch(CONTEXT_ID) > firstEpoch);
+            assertUnlocked(manager, false, false, null);
+
+            manager.update(CONTEXT_ID, THIRD, state -> state.withOffWork(true));
+            assertUnlocked(manager, false, false, true);
+        }
+        try (PlayerStateManager manager = new PlayerStateManager(store, config)) {
+            assertUnlocked(manager, false, false, true);
+        }
+        try (PlayerStateManager manager = new PlayerStateManager(store, config)) {
+            assertEquals(1, manager.resetAllOffWorkUnlocks());
+            assertUnlocked(manager, false, false, false);
+            assertEquals(0, manager.findState(CONTEXT_ID, THIRD).map(PlayerState::getPoints).orElse(-1));
+        }
+    }
+
+    /**
+     * Every disk backend keeps the epoch beside the context, so that it outlives a restart.
+     */
+    @ParameterizedTest
+    @EnumSource(value = ConfigData.StorageBackend.class, names = "MEMORY", mode = EnumSource.Mode.EXCLUDE)
+    void epochIsStoredWithTheContext(ConfigData.StorageBackend backend) throws IOException {
+        ConfigData config = ConfigData.builder().storageBackend(backend).build();
+        try (PlayerStateManager manager = new PlayerStateManager(directory, config)) {
+            manager.update(CONTEXT_ID, FIRST, state -> state.withOffWork(true));
+            manager.resetOffWorkUnlocks(CONTEXT_ID);
+        }
+        try (StateStore store = StateStore.create(directory, config)) {
+            assertTrue(store.supportsResetEpoch());
+            assertTrue(store.loadResetEpoch(CONTEXT_ID) > 0L);
+            assertEquals(List.of(CONTEXT_ID), List.copyOf(store.listContexts()));
+        }
+        try (PlayerStateManager manager = new PlayerStateManager(directory, config)) {
+            assertFalse(manager.findState(CONTEXT_ID, FIRST).orElseThrow().canOffWork());
+        }
+    }
+
+    /**
+     * Checks the unlocks of the three players; {@code null} means the player must not exist.
+     */
+    private static void assertUnlocked(PlayerStateManager manager, Boolean... expected) throws IOException {
+        UUID[] players = {FIRST, SECOND, THIRD};
+        Boolean[] unlocked = new Boolean[players.length];
+        for (int i = 0; i < players.length; i++) {
+            unlocked[i] = manager.findState(CONTEXT_ID, players[i]).map(PlayerState::canOffWork).orElse(null);
+        }
+        assertEquals(Arrays.asList(expected), Arrays.asList(unlocked));
+    }
+}
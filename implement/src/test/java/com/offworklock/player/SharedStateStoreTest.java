@@ -0,0 +1,93 @@
+package com.offworklock.player;
+
+import com.offworklock.config.ConfigData;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@code sharedStorage} across processes: several JVMs add points on one player data directory,
+ * each to a player of its own and to one player all of them share, and every point must survive,
+ * including those added to the shared player concurrently.
+ */
+class SharedStateStoreTest {
+
+    private static final String CONTEXT_ID = "shared";
+    private static final UUID SHARED_PLAYER = new UUID(0L, 0L);
+    private static final int PROCESSES = 4;
+    private static final int UPDATES = 200;
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @EnumSource(value = ConfigData.StorageBackend.class, names = {"TEXT", "COMPACT", "BUCKETED"})
+    void updatesOfAllProcessesAreKept(ConfigData.StorageBackend backend) throws IOException, InterruptedException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> workers = new ArrayList<>();
+        for (int worker = 0; worker < PROCESSES; worker++) {
+            workers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    Worker.class.getName(), directory.toString(), backend.name(), Integer.toString(worker))
+                    .inheritIO()
+                    .start());
+        }
+        for (Process worker : workers) {
+            assertTrue(worker.waitFor(2, TimeUnit.MINUTES));
+            assertEquals(0, worker.exitValue());
+        }
+
+        try (PlayerStateManager manager = new PlayerStateManager(directory, config(backend))) {
+            Map<UUID, PlayerState> states = manager.snapshotContext(CONTEXT_ID);
+            assertEquals(PROCESSES * UPDATES, states.get(SHARED_PLAYER).getPoints());
+            for (int worker = 0; worker < PROCESSES; worker++) {
+                assertEquals(UPDATES, states.get(ownPlayer(worker)).getPoints());
+            }
+            assertEquals(PROCESSES + 1, states.size());
+        }
+    }
+
+    private static ConfigData config(ConfigData.StorageBackend backend) {
+        return ConfigData.builder()
+                .storageBackend(backend)
+                .persistenceMode(ConfigData.PersistenceMode.IMMEDIATE)
+                .sharedStorage(true)
+                .build();
+    }
+
+    private static UUID ownPlayer(int worker) {
+        return new UUID(1L, worker);
+    }
+
+    /**
+     * One of the processes; takes the data directory, the backend and its own number.
+     */
+    static final class Worker {
+
+        public static void main(String[] args) throws IOException {
+            ConfigData.StorageBackend backend = ConfigData.StorageBackend.valueOf(args[1]);
+            int worker = Integer.parseInt(args[2]);
+            ConfigData config = config(backend).toBuilder().sharedStorageCheckMillis(0).build();
+            try (PlayerStateManager manager = new PlayerStateManager(Path.of(args[0]), config)) {
+                for (int i = 0; i < UPDATES; i++) {
+                    manager.updatePacked(CONTEXT_ID, SHARED_PLAYER, Worker::addPoint);
+                    manager.updatePacked(CONTEXT_ID, ownPlayer(worker), Worker::addPoint);
+                }
+            }
+        }
+
+        private static long addPoint(long packed) {
+            return PackedPlayerState.withPoints(packed, PackedPlayerState.points(packed) + 1);
+        }
+    }
+}
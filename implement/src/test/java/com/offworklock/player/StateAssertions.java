@@ -0,0 +1,31 @@
+package com.offworklock.player;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Assertions on whole contexts that compare every field a store keeps, including the last-seen
+ * time that {@link PlayerState#equals} leaves out.
+ */
+final class StateAssertions {
+
+    private StateAssertions() {
+    }
+
+    static void assertSameStates(Map<UUID, PlayerState> expected, Map<UUID, PlayerState> actual) {
+        assertEquals(describe(expected), describe(actual));
+    }
+
+    static boolean sameStates(Map<UUID, PlayerState> expected, Map<UUID, PlayerState> actual) {
+        return describe(expected).equals(describe(actual));
+    }
+
+    private static Map<UUID, String> describe(Map<UUID, PlayerState> states) {
+        Map<UUID, String> described = new TreeMap<>();
+        states.forEach((playerId, state) -> described.put(playerId, String.valueOf(state)));
+        return described;
+    }
+}